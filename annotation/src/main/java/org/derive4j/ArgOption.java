@@ -20,6 +20,12 @@ package org.derive4j;
 
 public enum ArgOption {
 
-  checkedNotNull
+  checkedNotNull,
+
+  cachedHashCode,
+
+  interned,
+
+  singleThreadedLazy
 
 }
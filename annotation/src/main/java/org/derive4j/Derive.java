@@ -44,4 +44,10 @@ import static org.derive4j.Visibility.Same;
 
   Instances[] value() default {};
 
+  /**
+   * Dot separated paths of fields through nested data types, eg. {@code "contact.postalAddress.number"}, for which fused modifiers
+   * (eg. {@code modContactPostalAddressNumber} and {@code setContactPostalAddressNumber}) are derived.
+   */
+  String[] paths() default {};
+
 }
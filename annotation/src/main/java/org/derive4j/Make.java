@@ -74,6 +74,27 @@ package org.derive4j;
 
       return cases.hktCoerce();
     }
+  },
+
+  primitiveMatching {
+    @Override public <R> R match(Cases<R> cases) {
+
+      return cases.primitiveMatching();
+    }
+  },
+
+  codec {
+    @Override public <R> R match(Cases<R> cases) {
+
+      return cases.codec();
+    }
+  },
+
+  journal {
+    @Override public <R> R match(Cases<R> cases) {
+
+      return cases.journal();
+    }
   };
 
   public abstract <R> R match(Cases<R> cases);
@@ -94,6 +115,12 @@ package org.derive4j;
     R catamorphism();
 
     R hktCoerce();
+
+    R primitiveMatching();
+
+    R codec();
+
+    R journal();
   }
 
 }
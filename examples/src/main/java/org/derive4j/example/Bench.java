@@ -25,6 +25,21 @@
  */
 package org.derive4j.example;
 
+import fj.F;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
 public class Bench {
 
   static final int COUNT = 500000;
@@ -46,8 +61,292 @@ public class Bench {
     timed(() -> java.util.stream.Stream.iterate(0, i -> i + 1).limit(COUNT).reduce(0, (i1, i2) -> i1 + 1));
 
     timed(() -> Stream.range(0, COUNT).length());
+
+    Request put = Requests.PUT("/index.html", "<html/>");
+    Request samePut = Requests.PUT("/index.html", "<html/>");
+    // Same constructor: fields are compared directly, no visitor is allocated.
+    timed(() -> {
+      for (int i = 0; i < COUNT; i++) {
+        sink += put.equals(samePut) ? 1 : 0;
+      }
+    });
+    allocated(() -> put.equals(samePut));
+
+    // Getters on a mix of constructors: direct field reads vs visitor dispatch (which is what lazy instances go through).
+    Request[] requests = new Request[COUNT];
+    for (int i = 0; i < requests.length; i++) {
+      requests[i] = (i % 4 == 0)
+                    ? Requests.GET("/" + i % 10)
+                    : (i % 4 == 1)
+                      ? Requests.DELETE("/" + i % 10)
+                      : (i % 4 == 2)
+                        ? Requests.PUT("/" + i % 10, "<html/>")
+                        : Requests.POST("/" + i % 10, "<html/>");
+    }
+    Request.Cases<String> pathVisitor = Requests.cases(path -> path, path -> path, (path, body) -> path, (path, body) -> path);
+    // Average time after 200 iterations: 3.880461 ms
+    timed(() -> {
+      for (Request request : requests) {
+        sink += Requests.getPath(request).length();
+      }
+    });
+    // Average time after 200 iterations: 5.227034 ms
+    timed(() -> {
+      for (Request request : requests) {
+        sink += request.match(pathVisitor).length();
+      }
+    });
+
+    // Optional getter vs allocation free getters:
+    Request get = Requests.GET("/index.html");
+    allocated(() -> sink += Requests.getBody(get).orSome("").length());
+    allocated(() -> sink += Requests.getBodyOrElse(get, "").length());
+
+    // Building matchers inline: total, otherwise and otherwiseEmpty paths.
+    timed(() -> {
+      for (int i = 0; i < COUNT; i++) {
+        sink += Requests.cases().GET(0).DELETE(1).PUT(2).POST(3).f(put);
+      }
+    });
+    timed(() -> {
+      for (int i = 0; i < COUNT; i++) {
+        sink += Requests.cases().PUT(2).POST(3).otherwise(0).f(put);
+      }
+    });
+    Expression one = Expressions.Const(1);
+    timed(() -> {
+      for (int i = 0; i < COUNT; i++) {
+        sink += Expressions.cases().Const(value -> value).otherwiseEmpty().apply(one).orElse(0);
+      }
+    });
+    allocated(() -> Requests.cases().GET(0).DELETE(1).PUT(2).POST(3));
+    allocated(() -> Requests.cases().PUT(2).POST(3).otherwise(0));
+
+    // Constant results: table lookup on the constructor tag vs dispatch through the visitor.
+    F<Request, Integer> constantCases = Requests.cases().GET(0).DELETE(1).PUT(2).POST(3);
+    F<Request, Integer> mapperCases = Requests.cases().GET(path -> 0).DELETE(path -> 1).PUT((path, body) -> 2).POST((path, body) -> 3);
+    timed(() -> {
+      for (Request request : requests) {
+        sink += constantCases.f(request);
+      }
+    });
+    timed(() -> {
+      for (Request request : requests) {
+        sink += mapperCases.f(request);
+      }
+    });
+    timed(() -> {
+      for (Request request : requests) {
+        switch (Requests.constructorTag(request)) {
+          case 2:
+          case 3:
+            sink += Requests.getBodyOrElse(request, "").length();
+        }
+      }
+    });
+
+    // Enums: matchers dispatch on tables indexed by the ordinal vs a visitor dispatched by each (megamorphic) constant.
+    Day[] days = new Day[COUNT];
+    for (int i = 0; i < days.length; i++) {
+      days[i] = Day.values()[i % 7];
+    }
+    Function<Day, Boolean> weekend = Days.cases().Sunday(true).Saturday(true).otherwise(false);
+    Day.Cases<Boolean> weekendVisitor = Days.cases(() -> true, () -> false, () -> false, () -> false, () -> false, () -> false, () -> true);
+    timed(() -> {
+      for (Day day : days) {
+        sink += weekend.apply(day) ? 1 : 0;
+      }
+    });
+    timed(() -> {
+      for (Day day : days) {
+        sink += day.match(weekendVisitor) ? 1 : 0;
+      }
+    });
+
+    // Recursive cata vs strict cata vs stack-safe cata vs parallel cata, on a balanced and on a degenerate tree:
+    Function<Expression, Integer> cata = Expressions.cata(value -> value, (left, right) -> left.get() + right.get(),
+        (left, right) -> left.get() * right.get(), expr -> -expr.get());
+    Function<Expression, Integer> strictCata = Expressions.strictCata(value -> value, (left, right) -> left + right,
+        (left, right) -> left * right, expr -> -expr);
+    Function<Expression, Integer> stackSafeCata = Expressions.stackSafeCata(value -> value, (left, right) -> left + right,
+        (left, right) -> left * right, expr -> -expr);
+    Expression balanced = balancedExpression(16);
+    Expression degenerate = degenerateExpression(2000);
+    timed(() -> cata.apply(balanced));
+    timed(() -> strictCata.apply(balanced));
+    // same algebra, without boxing the intermediate results:
+    ToIntFunction<Expression> cataInt = Expressions.cataInt(value -> value, (left, right) -> left + right, (left, right) -> left * right,
+        expr -> -expr);
+    timed(() -> sink += cataInt.applyAsInt(balanced));
+    Expression small = balancedExpression(4);
+    allocated(() -> cata.apply(small));
+    allocated(() -> strictCata.apply(small));
+    timed(() -> stackSafeCata.apply(balanced));
+    Function<Expression, Integer> parallelCata = Expressions.parallelCata(6, value -> value, (left, right) -> left + right,
+        (left, right) -> left * right, expr -> -expr);
+    timed(() -> parallelCata.apply(balanced));
+    timed(() -> cata.apply(degenerate));
+    timed(() -> strictCata.apply(degenerate));
+    timed(() -> stackSafeCata.apply(degenerate));
+
+    // Binary codec: encoding (which does not allocate) and decoding of the balanced tree.
+    ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+    timed(() -> {
+      buffer.clear();
+      Expressions.encode(balanced, buffer);
+    });
+    allocated(() -> {
+      buffer.clear();
+      Expressions.encode(small, buffer);
+    });
+    buffer.clear();
+    Expressions.encode(balanced, buffer);
+    buffer.flip();
+    timed(() -> {
+      buffer.rewind();
+      Expressions.decode(buffer);
+    });
+    // Lazy decoding: only the nodes on the leftmost path of the balanced tree are decoded.
+    Function<Expression, Integer> leftmostDepth = Expressions.cata(value -> 0, (left, right) -> 1 + left.get(),
+        (left, right) -> 1 + left.get(), expr -> 1 + expr.get());
+    timed(() -> leftmostDepth.apply(Expressions.decodeLazy(buffer, 0)));
+    timed(() -> {
+      buffer.rewind();
+      leftmostDepth.apply(Expressions.decode(buffer));
+    });
+    timed(() -> strictCata.apply(Expressions.decodeLazy(buffer, 0)));
+
+    // Views: matching on encoded contacts in place (off-heap), versus decoding them: the addresses of the views are not decoded
+    // when only looking for phone numbers.
+    ByteBuffer contacts = ByteBuffer.allocateDirect(1 << 20);
+    for (int i = 0; contacts.remaining() > 64; i++) {
+      Contacts.encode(i % 10 == 0
+                      ? Contacts.byPhone("0" + i)
+                      : Contacts.byMail(Addresses.Address(i, "Rue de la Paix")), contacts);
+    }
+    int contactsEnd = contacts.position();
+    Function<Contact, Boolean> isPhone = Contacts.cases().byEmail(false).byPhone(true).byMail(false);
+    timed(() -> {
+      for (int offset = 0; offset < contactsEnd; offset = Contacts.skip(contacts, offset)) {
+        sink += isPhone.apply(Contacts.view(contacts, offset)) ? 1 : 0;
+      }
+    });
+    timed(() -> {
+      contacts.rewind();
+      while (contacts.position() < contactsEnd) {
+        sink += isPhone.apply(Contacts.decode(contacts)) ? 1 : 0;
+      }
+    });
+
+    // toString of a deep term: each level is appended to a single builder, instead of copying the string of its sub-term.
+    // Term is recursive, so toString and equals run in bounded stack (they would overflow it when recursing at this depth).
+    Term<Integer> succs = Terms.Zero();
+    Term<Integer> otherSuccs = Terms.Zero();
+    for (int i = 0; i < 100000; i++) {
+      succs = Terms.Succ(succs);
+      otherSuccs = Terms.Succ(otherSuccs);
+    }
+    Term<Integer> deepTerm = succs;
+    Term<Integer> otherDeepTerm = otherSuccs;
+    timed(() -> sink += deepTerm.toString().length());
+    timed(() -> sink += deepTerm.equals(otherDeepTerm) ? 1 : 0);
+
+    // Journal: appending to memory-mapped segments (not forced), and replaying them through views or through the visitor.
+    journal();
+
+    // 1..N threads forcing the same lazy values.
+    int nbThreads = Runtime.getRuntime().availableProcessors();
+    ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+    for (int threads = 1; threads <= nbThreads; threads *= 2) {
+      int forcingThreads = threads;
+      System.out.printf("%d thread(s): ", threads);
+      timed(() -> forceConcurrently(executor, forcingThreads));
+    }
+    executor.shutdown();
   }
 
+  static void journal() {
+
+    try {
+      Path directory = Files.createTempDirectory("bench-journal");
+      java.util.List<OrderEvent> events = new ArrayList<>();
+      for (int i = 0; i < COUNT; i++) {
+        events.add((i % 2 == 0)
+                   ? OrderEvents.placed(i, "EURUSD", 100, 1.1)
+                   : OrderEvents.cancelled(i - 1));
+      }
+      try (OrderEvents.Journal journal = OrderEvents.openJournal(directory, 1 << 24, 0)) {
+        long start = System.nanoTime();
+        journal.appendAll(events);
+        System.out.printf("Appended %d events in %f ms%n", COUNT, (System.nanoTime() - start) / 1000000.0);
+      }
+      Function<OrderEvent, Boolean> isCancelled = OrderEvents.cases().cancelled(true).otherwise(false);
+      timed(() -> {
+        try {
+          OrderEvents.replayJournal(directory, event -> sink += isCancelled.apply(event) ? 1 : 0);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+      OrderEvent.Cases<Integer> countCancelled = OrderEvents.cases((orderId, symbol, quantity, price) -> 0,
+          (orderId, quantity, price) -> 0, orderId -> sink++);
+      timed(() -> {
+        try {
+          OrderEvents.matchJournal(directory, countCancelled);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+
+      try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory)) {
+        for (Path segment : segments) {
+          Files.delete(segment);
+        }
+      }
+      Files.delete(directory);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  static Expression balancedExpression(int depth) {
+
+    return depth == 0
+           ? Expressions.Const(1)
+           : Expressions.Add(balancedExpression(depth - 1), balancedExpression(depth - 1));
+  }
+
+  static Expression degenerateExpression(int depth) {
+
+    Expression expression = Expressions.Const(1);
+    for (int i = 0; i < depth; i++) {
+      expression = Expressions.Add(Expressions.Const(1), expression);
+    }
+    return expression;
+  }
+
+  static void forceConcurrently(ExecutorService executor, int threads) {
+
+    Request[] requests = new Request[COUNT / 10];
+    for (int i = 0; i < requests.length; i++) {
+      requests[i] = Requests.lazy(() -> Requests.GET("/"));
+    }
+    Callable<Integer> forceAll = () -> {
+      int length = 0;
+      for (Request request : requests) {
+        length += Requests.getPath(request).length();
+      }
+      return length;
+    };
+    try {
+      executor.invokeAll(Collections.nCopies(threads, forceAll));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  static int sink;
+
   static void timed(Runnable stuff) {
 
     for (int i = 0; i < WARMUP; i++) {
@@ -64,4 +363,18 @@ public class Bench {
     System.out.printf("Average time after %d iterations: %f ms\n", ITERATIONS, (vs / 1000000.0) / ITERATIONS);
   }
 
+  static void allocated(Runnable stuff) {
+
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    for (int i = 0; i < COUNT; i++) {
+      stuff.run();
+    }
+    long before = threads.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < COUNT; i++) {
+      stuff.run();
+    }
+    System.out.printf("Allocated bytes per call: %f\n", (threads.getThreadAllocatedBytes(threadId) - before) / (double) COUNT);
+  }
+
 }
\ No newline at end of file
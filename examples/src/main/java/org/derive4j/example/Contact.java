@@ -26,8 +26,19 @@
 package org.derive4j.example;
 
 import org.derive4j.Data;
+import org.derive4j.Derive;
 
-@Data public abstract class Contact {
+import static org.derive4j.Make.catamorphism;
+import static org.derive4j.Make.codec;
+import static org.derive4j.Make.constructors;
+import static org.derive4j.Make.getters;
+import static org.derive4j.Make.lambdaVisitor;
+import static org.derive4j.Make.lazyConstructor;
+import static org.derive4j.Make.modifiers;
+import static org.derive4j.Make.patternMatching;
+
+@Data(@Derive(make = { lambdaVisitor, constructors, getters, modifiers, lazyConstructor, patternMatching, catamorphism, codec }))
+public abstract class Contact {
 
   interface Cases<R> {
     R byEmail(String email);
@@ -25,10 +25,11 @@
  */
 package org.derive4j.example;
 
+import org.derive4j.ArgOption;
 import org.derive4j.Data;
 import org.derive4j.Flavour;
 
-@Data(flavour = Flavour.Javaslang) public abstract class Event<T> {
+@Data(flavour = Flavour.Javaslang, arguments = ArgOption.interned) public abstract class Event<T> {
 
   interface Cases<T, R> {
 
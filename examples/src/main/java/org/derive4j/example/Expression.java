@@ -25,21 +25,33 @@
  */
 package org.derive4j.example;
 
-import java.util.function.Function;
+import java.util.function.ToIntFunction;
 import org.derive4j.Data;
+import org.derive4j.Derive;
 
+import static org.derive4j.Make.catamorphism;
+import static org.derive4j.Make.codec;
+import static org.derive4j.Make.constructors;
+import static org.derive4j.Make.getters;
+import static org.derive4j.Make.lambdaVisitor;
+import static org.derive4j.Make.lazyConstructor;
+import static org.derive4j.Make.modifiers;
+import static org.derive4j.Make.patternMatching;
+import static org.derive4j.Make.primitiveMatching;
 import static org.derive4j.example.Expressions.Add;
 import static org.derive4j.example.Expressions.Const;
 import static org.derive4j.example.Expressions.Mult;
 
-@Data public abstract class Expression {
+@Data(@Derive(make = { lambdaVisitor, constructors, getters, modifiers, lazyConstructor, patternMatching, catamorphism, primitiveMatching,
+    codec }))
+public abstract class Expression {
 
-  private static final Function<Expression, Integer> eval = Expressions.cata(value -> value, (left, right) -> left.get() + right.get(),
-      (left, right) -> left.get() * right.get(), expr -> -expr.get());
+  private static final ToIntFunction<Expression> eval = Expressions.cataInt(value -> value, (left, right) -> left + right,
+      (left, right) -> left * right, expr -> -expr);
 
-  public static Integer eval(Expression expression) {
+  public static int eval(Expression expression) {
 
-    return eval.apply(expression);
+    return eval.applyAsInt(expression);
   }
 
   public static void main(String[] args) {
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2015, Jean-Baptiste Giraudeau <jb@giraudeau.info>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.derive4j.example;
+
+import org.derive4j.Data;
+import org.derive4j.Derive;
+
+import static org.derive4j.Make.constructors;
+import static org.derive4j.Make.getters;
+import static org.derive4j.Make.journal;
+import static org.derive4j.Make.lambdaVisitor;
+import static org.derive4j.Make.patternMatching;
+
+/** Events of an order book, appended to a memory-mapped journal. */
+@Data(@Derive(make = { lambdaVisitor, constructors, getters, patternMatching, journal })) public abstract class OrderEvent {
+
+  interface Cases<R> {
+    R placed(long orderId, String symbol, int quantity, double price);
+
+    R filled(long orderId, int quantity, double price);
+
+    R cancelled(long orderId);
+  }
+
+  public abstract <R> R match(Cases<R> cases);
+
+  @Override public abstract boolean equals(Object obj);
+
+  @Override public abstract int hashCode();
+
+  @Override public abstract String toString();
+
+}
@@ -29,6 +29,7 @@ import java.util.Optional;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import org.derive4j.Data;
+import org.derive4j.Derive;
 import org.derive4j.FieldNames;
 
 import static org.derive4j.example.Addresses.Address;
@@ -39,8 +40,9 @@ import static org.derive4j.example.PersonNames.Name;
 import static org.derive4j.example.Persons.Person;
 import static org.derive4j.example.Persons.getContact;
 import static org.derive4j.example.Persons.modContact;
+import static org.derive4j.example.Persons.modContactPostalAddressNumber;
 
-@Data public abstract class Person {
+@Data(@Derive(paths = "contact.postalAddress.number")) public abstract class Person {
 
   public abstract <R> R match(@FieldNames({ "name", "contact" }) BiFunction<PersonName, Contact, R> Person);
 
@@ -56,6 +58,9 @@ import static org.derive4j.example.Persons.modContact;
     // newP is a copy of p with the street number incremented:
     Person correctedJoe = incrementStreetNumber.apply(joe);
 
+    // or, through the fused modifier derived for the declared path (no intermediate function nor copy):
+    correctedJoe = modContactPostalAddressNumber(number -> number + 1).apply(joe);
+
     Optional<Integer> newStreetNumber = getPostalAddress(getContact(correctedJoe)).map(Addresses::getNumber);
 
     System.out.println(newStreetNumber); // print "Optional[11]" !!
@@ -26,6 +26,7 @@
 package org.derive4j.example;
 
 import java.util.function.Function;
+import org.derive4j.ArgOption;
 import org.derive4j.Data;
 
 import static java.lang.System.out;
@@ -42,7 +43,7 @@ import static org.derive4j.example.Terms.Zero;
 // Highlights:
 // -> no cast and no subtyping.
 // -> all of the eval function logic is static and not scattered all around Term subclasses.
-@Data public abstract class Term<T> {
+@Data(arguments = ArgOption.cachedHashCode) public abstract class Term<T> {
   Term() {
 
   }
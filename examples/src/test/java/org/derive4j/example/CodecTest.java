@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2015, Jean-Baptiste Giraudeau <jb@giraudeau.info>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.derive4j.example;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CodecTest {
+
+  @Test public void varints_should_round_trip_bounds() {
+
+    for (int number : new int[] { 0, -1, 1, Integer.MIN_VALUE, Integer.MAX_VALUE }) {
+      ByteBuffer buffer = ByteBuffer.allocate(64);
+      Addresses.encode(Addresses.Address(number, ""), buffer);
+      buffer.flip();
+      assertEquals(number, Addresses.getNumber(Addresses.decode(buffer)));
+      assertEquals(0, buffer.remaining());
+    }
+    for (long orderId : new long[] { 0, -1, 1, Long.MIN_VALUE, Long.MAX_VALUE }) {
+      ByteBuffer buffer = ByteBuffer.allocate(64);
+      OrderEvents.encode(OrderEvents.placed(orderId, "EURUSD", Integer.MIN_VALUE, -0.0), buffer);
+      OrderEvents.encode(OrderEvents.cancelled(orderId), buffer);
+      buffer.flip();
+      OrderEvent placed = OrderEvents.decode(buffer);
+      assertEquals(orderId, OrderEvents.getOrderId(placed));
+      assertEquals(Integer.MIN_VALUE, OrderEvents.getQuantityOrElse(placed, 0));
+      assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(OrderEvents.getPriceOrElse(placed, 0)));
+      assertEquals(orderId, OrderEvents.getOrderId(OrderEvents.decode(buffer)));
+      assertEquals(0, buffer.remaining());
+    }
+  }
+
+  @Test public void varints_should_zigzag_small_negative_numbers() {
+
+    assertEquals(1, encodedNumberLength(-1));
+    assertEquals(1, encodedNumberLength(-64));
+    assertEquals(2, encodedNumberLength(-65));
+    assertEquals(5, encodedNumberLength(Integer.MIN_VALUE));
+  }
+
+  @Test public void strings_should_be_encoded_as_utf8() {
+
+    for (String street : new String[] { "", "rue de la Paix", "caf\u00E9", "\u20AC", "\uD83D\uDE00", "a\uD83D\uDE00b\uD800\uDC00" }) {
+      assertArrayEquals(street.getBytes(StandardCharsets.UTF_8), encodedStreet(street));
+      assertEquals(street, decodedStreet(street, ByteBuffer.allocate(64)));
+      assertEquals(street, decodedStreet(street, ByteBuffer.allocateDirect(64)));
+    }
+  }
+
+  @Test public void unpaired_surrogates_should_be_encoded_as_String_getBytes_does() {
+
+    for (String street : new String[] { "\uD800", "\uDC00", "a\uD800b", "a\uDC00\uD800b", "\uDE00\uD83D", "x\uD83D" }) {
+      byte[] utf8 = street.getBytes(StandardCharsets.UTF_8);
+      assertArrayEquals(utf8, encodedStreet(street));
+      assertEquals(new String(utf8, StandardCharsets.UTF_8), decodedStreet(street, ByteBuffer.allocate(64)));
+      assertEquals(new String(utf8, StandardCharsets.UTF_8), decodedStreet(street, ByteBuffer.allocateDirect(64)));
+    }
+  }
+
+  private static int encodedNumberLength(int number) {
+
+    ByteBuffer buffer = ByteBuffer.allocate(64);
+    Addresses.encode(Addresses.Address(number, ""), buffer);
+    return buffer.position() - 1;
+  }
+
+  private static byte[] encodedStreet(String street) {
+
+    ByteBuffer buffer = ByteBuffer.allocate(64);
+    Addresses.encode(Addresses.Address(0, street), buffer);
+    buffer.flip();
+    buffer.get(); // number
+    int length = buffer.get() >> 1; // short streets: a single byte (zigzag) varint length
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    assertEquals(length, bytes.length);
+    return bytes;
+  }
+
+  private static String decodedStreet(String street, ByteBuffer buffer) {
+
+    Addresses.encode(Addresses.Address(0, street), buffer);
+    buffer.flip();
+    return Addresses.getStreet(Addresses.decode(buffer));
+  }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2015, Jean-Baptiste Giraudeau <jb@giraudeau.info>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.derive4j.example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JournalTest {
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test public void journal_should_replay_appended_events_across_segments() throws IOException {
+
+    Path directory = folder.getRoot().toPath();
+    List<OrderEvent> events = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      events.add((i % 2 == 0)
+                 ? OrderEvents.placed(i, "EURUSD", 100, 1.1)
+                 : OrderEvents.cancelled(i - 1));
+    }
+    try (OrderEvents.Journal journal = OrderEvents.openJournal(directory, 1024, 100)) {
+      journal.appendAll(events.subList(0, 500));
+      for (OrderEvent event : events.subList(500, 1000)) {
+        journal.append(event);
+      }
+    }
+    try (Stream<Path> segments = Files.list(directory)) {
+      assertTrue(segments.count() > 1);
+    }
+
+    assertEquals(events, replay(directory));
+  }
+
+  @Test public void journal_should_be_appended_past_a_failed_append_and_reopened() throws IOException {
+
+    Path directory = folder.getRoot().toPath();
+    try (OrderEvents.Journal journal = OrderEvents.openJournal(directory, 1024, 0)) {
+      journal.append(OrderEvents.placed(0, "EURUSD", 100, 1.1));
+      try {
+        // the symbol is encoded after the order id, that is then discarded:
+        journal.append(OrderEvents.placed(Long.MAX_VALUE, null, 100, 1.1));
+        fail("Appended an event with a null symbol");
+      } catch (NullPointerException expected) {
+        journal.append(OrderEvents.cancelled(0));
+      }
+    }
+    try (OrderEvents.Journal journal = OrderEvents.openJournal(directory, 1024, 0)) {
+      journal.append(OrderEvents.filled(1, 10, 1.2));
+    }
+
+    List<OrderEvent> expected = new ArrayList<>();
+    expected.add(OrderEvents.placed(0, "EURUSD", 100, 1.1));
+    expected.add(OrderEvents.cancelled(0));
+    expected.add(OrderEvents.filled(1, 10, 1.2));
+    assertEquals(expected, replay(directory));
+  }
+
+  @Test public void matchJournal_should_read_the_fields_of_each_record() throws IOException {
+
+    Path directory = folder.getRoot().toPath();
+    try (OrderEvents.Journal journal = OrderEvents.openJournal(directory, 64, 0)) {
+      journal.append(OrderEvents.placed(Long.MIN_VALUE, "EURUSD", Integer.MIN_VALUE, 1.1));
+      journal.append(OrderEvents.filled(1, 10, -0.0));
+      journal.append(OrderEvents.cancelled(Long.MAX_VALUE));
+    }
+
+    List<String> matched = new ArrayList<>();
+    OrderEvents.matchJournal(directory, OrderEvents.cases(
+        (orderId, symbol, quantity, price) -> matched.add("placed " + orderId + " " + symbol + " " + quantity + " " + price),
+        (orderId, quantity, price) -> matched.add("filled " + orderId + " " + quantity + " " + price),
+        orderId -> matched.add("cancelled " + orderId)));
+
+    List<String> expected = new ArrayList<>();
+    expected.add("placed " + Long.MIN_VALUE + " EURUSD " + Integer.MIN_VALUE + " 1.1");
+    expected.add("filled 1 10 -0.0");
+    expected.add("cancelled " + Long.MAX_VALUE);
+    assertEquals(expected, matched);
+  }
+
+  @Test public void empty_journal_should_replay_nothing() throws IOException {
+
+    Path directory = folder.getRoot().toPath();
+    OrderEvents.openJournal(directory, 1024, 0).close();
+
+    assertEquals(new ArrayList<OrderEvent>(), replay(directory));
+  }
+
+  private static List<OrderEvent> replay(Path directory) throws IOException {
+
+    List<OrderEvent> replayed = new ArrayList<>();
+    OrderEvents.replayJournal(directory, replayed::add);
+    return replayed;
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2015, Jean-Baptiste Giraudeau <jb@giraudeau.info>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  * Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.derive4j.example;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class ViewTest {
+
+  private static final List<OrderEvent> events = Arrays.asList(OrderEvents.placed(1, "EURUSD", 100, 1.1),
+      OrderEvents.placed(Long.MIN_VALUE, "a\uD83D\uDE00b", Integer.MIN_VALUE, Double.NaN), OrderEvents.filled(Long.MAX_VALUE, -1, -0.0),
+      OrderEvents.cancelled(-1));
+
+  @Test public void views_should_equal_decoded_values() {
+
+    for (ByteBuffer buffer : Arrays.asList(ByteBuffer.allocate(1024), ByteBuffer.allocateDirect(1024),
+        ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN))) {
+      buffer.put((byte) 42); // views at a non zero offset
+      for (OrderEvent event : events) {
+        OrderEvents.encode(event, buffer);
+      }
+      int end = buffer.position();
+      int offset = 1;
+      for (OrderEvent event : events) {
+        OrderEvent view = OrderEvents.view(buffer, offset);
+        ByteBuffer decodeBuffer = buffer.duplicate().order(buffer.order());
+        decodeBuffer.position(offset);
+        OrderEvent decoded = OrderEvents.decode(decodeBuffer);
+
+        assertEquals(view, decoded);
+        assertEquals(decoded, view);
+        assertEquals(event, view);
+        assertEquals(view, OrderEvents.view(buffer, offset));
+        assertEquals(decoded.hashCode(), view.hashCode());
+        assertEquals(event.hashCode(), view.hashCode());
+        assertEquals(decoded.toString(), view.toString());
+        assertEquals(OrderEvents.getOrderId(event), OrderEvents.getOrderId(view));
+
+        offset = OrderEvents.skip(buffer, offset);
+        assertEquals(decodeBuffer.position(), offset);
+      }
+      assertEquals(end, offset);
+    }
+  }
+
+  @Test public void views_should_not_equal_other_values() {
+
+    ByteBuffer buffer = ByteBuffer.allocate(1024);
+    OrderEvents.encode(events.get(0), buffer);
+    OrderEvent view = OrderEvents.view(buffer, 0);
+    for (OrderEvent other : events.subList(1, events.size())) {
+      assertNotEquals(other, view);
+      assertNotEquals(view, other);
+    }
+    assertNotEquals(view, OrderEvents.placed(1, "EURUSD", 100, 1.2));
+  }
+
+  @Test public void views_should_be_re_encoded_as_their_bytes() {
+
+    ByteBuffer buffer = ByteBuffer.allocate(1024);
+    for (OrderEvent event : events) {
+      OrderEvents.encode(event, buffer);
+    }
+    ByteBuffer copy = ByteBuffer.allocate(1024);
+    for (int offset = 0; offset < buffer.position(); offset = OrderEvents.skip(buffer, offset)) {
+      OrderEvents.encode(OrderEvents.view(buffer, offset), copy);
+    }
+    buffer.flip();
+    copy.flip();
+    assertEquals(buffer, copy);
+  }
+
+}
@@ -18,6 +18,7 @@
  */
 package org.derive4j.processor.api.model;
 
+import java.util.List;
 import java.util.Set;
 import org.derive4j.Flavour;
 import org.derive4j.Make;
@@ -35,4 +36,6 @@ public interface DeriveContext {
 
   Set<Make> makes();
 
+  List<String> paths();
+
 }
@@ -24,6 +24,7 @@ import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.TypeSpec;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.ServiceLoader;
@@ -72,7 +73,7 @@ DerivingProcessor
     return StreamSupport.stream(ServiceLoader.load(Derivator.class).spliterator(), false).collect(Collectors.toList());
   }
 
-  private static String deduceDerivedClassName(Derive deriveConf, TypeElement typeElement) {
+  public static String deduceDerivedClassName(Derive deriveConf, TypeElement typeElement) {
 
     return ":auto".equals(deriveConf.inClass())
            ? (typeElement.getSimpleName().toString() + 's')
@@ -137,6 +138,11 @@ DerivingProcessor
 
             return makes;
           }
+
+          @Override public List<String> paths() {
+
+            return Arrays.asList(dataAnnotation.value().paths());
+          }
         };
 
         DeriveResult<AlgebraicDataType> parseResult = deriveUtils.parseAlgebraicDataType(element);
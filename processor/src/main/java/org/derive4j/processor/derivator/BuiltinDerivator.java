@@ -35,10 +35,14 @@ import org.derive4j.processor.api.model.AlgebraicDataType;
 import org.derive4j.processor.api.model.DeriveContext;
 import org.derive4j.processor.derivator.patternmatching.PatternMatchingDerivator;
 
+import static org.derive4j.Make.codec;
 import static org.derive4j.Make.constructors;
 import static org.derive4j.Make.lambdaVisitor;
 import static org.derive4j.processor.Utils.traverseResults;
+import static org.derive4j.processor.api.DeriveMessage.message;
+import static org.derive4j.processor.api.DeriveResult.error;
 import static org.derive4j.processor.api.DeriveResults.lazy;
+import static org.derive4j.processor.api.MessageLocalization.onElement;
 
 public class BuiltinDerivator {
 
@@ -50,20 +54,33 @@ public class BuiltinDerivator {
       .getters(() -> Stream.of(lambdaVisitor))
       .modifiers(() -> Stream.of(lambdaVisitor, constructors))
       .catamorphism(() -> Stream.of(lambdaVisitor))
-      .hktCoerce(Stream::of);
+      .hktCoerce(Stream::of)
+      .primitiveMatching(() -> Stream.of(lambdaVisitor, constructors))
+      .codec(() -> Stream.of(lambdaVisitor, constructors))
+      .journal(() -> Stream.of(lambdaVisitor, constructors, codec));
 
   public static BiFunction<AlgebraicDataType, DeriveContext, DeriveResult<DerivedCodeSpec>> derivator(DeriveUtils deriveUtils) {
 
-    return (adt, deriveContext) -> traverseResults(deriveContext.makes(), Makes.cases()
-        .lambdaVisitor(lazy(() -> MapperDerivator.derive(adt, deriveContext, deriveUtils)))
-        .constructors(lazy(() -> StrictConstructorDerivator.derive(adt, deriveContext, deriveUtils)))
-        .lazyConstructor(lazy(() -> LazyConstructorDerivator.derive(adt, deriveContext, deriveUtils)))
-        .patternMatching(lazy(() -> PatternMatchingDerivator.derive(adt, deriveContext, deriveUtils)))
-        .getters(lazy(() -> GettersDerivator.derive(adt, deriveContext, deriveUtils)))
-        .modifiers(lazy(() -> ModiersDerivator.derive(adt, deriveContext, deriveUtils)))
-        .catamorphism(lazy(() -> new CataDerivator(deriveUtils, deriveContext, adt).derive()))
-        .hktCoerce(DeriveResult.result(DerivedCodeSpec.none()))).map(
-        codeSpecList -> codeSpecList.stream().reduce(DerivedCodeSpec.none(), DerivedCodeSpec::append));
+    return (adt, deriveContext) -> {
+      // paths are derived by the modifiers derivator:
+      if (!deriveContext.paths().isEmpty() && !deriveContext.makes().contains(Make.modifiers)) {
+        return error(message("Paths are only derived along with modifiers: add 'modifiers' to the derived features",
+            onElement(adt.typeConstructor().typeElement())));
+      }
+      return traverseResults(deriveContext.makes(), Makes.cases()
+          .lambdaVisitor(lazy(() -> MapperDerivator.derive(adt, deriveContext, deriveUtils)))
+          .constructors(lazy(() -> StrictConstructorDerivator.derive(adt, deriveContext, deriveUtils)))
+          .lazyConstructor(lazy(() -> LazyConstructorDerivator.derive(adt, deriveContext, deriveUtils)))
+          .patternMatching(lazy(() -> PatternMatchingDerivator.derive(adt, deriveContext, deriveUtils)))
+          .getters(lazy(() -> GettersDerivator.derive(adt, deriveContext, deriveUtils)))
+          .modifiers(lazy(() -> ModiersDerivator.derive(adt, deriveContext, deriveUtils)))
+          .catamorphism(lazy(() -> new CataDerivator(deriveUtils, deriveContext, adt).derive()))
+          .hktCoerce(DeriveResult.result(DerivedCodeSpec.none()))
+          .primitiveMatching(lazy(() -> PrimitiveMatchingDerivator.derive(adt, deriveContext, deriveUtils)))
+          .codec(lazy(() -> CodecDerivator.derive(adt, deriveContext, deriveUtils)))
+          .journal(lazy(() -> JournalDerivator.derive(adt, deriveContext, deriveUtils)))).map(
+          codeSpecList -> codeSpecList.stream().reduce(DerivedCodeSpec.none(), DerivedCodeSpec::append));
+    };
   }
 
   public static Set<Make> makeWithDpendencies(Make... makes) {
@@ -18,6 +18,7 @@
  */
 package org.derive4j.processor.derivator;
 
+import com.squareup.javapoet.AnnotationSpec;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
@@ -28,12 +29,17 @@ import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
 import com.squareup.javapoet.TypeVariableName;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
-import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeMirror;
 import org.derive4j.processor.Utils;
@@ -53,7 +59,7 @@ import static java.util.stream.Collectors.toList;
 import static java.util.stream.Stream.concat;
 import static org.derive4j.processor.Utils.fold;
 import static org.derive4j.processor.api.DeriveResult.result;
-import static org.derive4j.processor.api.DerivedCodeSpec.methodSpec;
+import static org.derive4j.processor.api.DerivedCodeSpec.methodSpecs;
 
 public class CataDerivator {
 
@@ -74,14 +80,24 @@ public class CataDerivator {
 
     return adt.fields().stream().map(DataArguments::getType).anyMatch(tm -> utils.types().isSameType(tm, adt.typeConstructor().declaredType()))
            ? DataConstructions.cases()
-               .multipleConstructors(
-                   MultipleConstructorsSupport.cases().visitorDispatch(this::visitorDispatchImpl).functionsDispatch(this::functionDispatchImpl))
+               .multipleConstructors(MultipleConstructorsSupport.cases()
+                   .visitorDispatch((visitorParam, visitorType, constructors) -> result(methodSpecs(concat(Stream.of(
+                       visitorDispatchImpl("cata", false, visitorType, constructors),
+                       visitorDispatchImpl("strictCata", true, visitorType, constructors),
+                       stackSafeCataMethod(visitorType, constructors)), parallelCataMethod(visitorType, constructors)).collect(toList()))))
+                   .functionsDispatch(constructors -> result(methodSpecs(concat(Stream.of(
+                       functionDispatchImpl("cata", false, constructors),
+                       functionDispatchImpl("strictCata", true, constructors),
+                       stackSafeCataMethod(null, constructors)), parallelCataMethod(null, constructors)).collect(toList())))))
                .otherwise(() -> result(DerivedCodeSpec.none()))
                .apply(adt.dataConstruction())
            : result(DerivedCodeSpec.none());
   }
 
-  private DeriveResult<DerivedCodeSpec> functionDispatchImpl(List<DataConstructor> constructors) {
+  /**
+   * @param strict if true, mappers receive the results for recursive fields, otherwise suppliers of those results.
+   */
+  private MethodSpec functionDispatchImpl(String methodName, boolean strict, List<DataConstructor> constructors) {
 
     NameAllocator nameAllocator = nameAllocator(constructors);
 
@@ -118,7 +134,7 @@ public class CataDerivator {
                                                         .stream()
                                                         .map(argument -> utils.types()
                                                                              .isSameType(argument.type(), adt.typeConstructor().declaredType())
-                                                                         ? ("() -> " +
+                                                                         ? ((strict ? "" : "() -> ") +
                                                                                 FlavourImpl.functionApplyMethod(utils, context) +
                                                                                 '(' +
                                                                                 nameAllocator.clone()
@@ -133,23 +149,23 @@ public class CataDerivator {
             .build())
         .build();
 
-    MethodSpec cataMethod = MethodSpec.methodBuilder("cata")
+    return MethodSpec.methodBuilder(methodName)
         .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
         .addTypeVariables(
             concat(adt.typeConstructor().typeVariables().stream(), Stream.of(adt.matchMethod().returnTypeVariable())).map(TypeVariableName::get)
                 .collect(toList()))
         .returns(returnType)
         .addParameters(constructors.stream()
-            .map(dc -> ParameterSpec.builder(cataMapperTypeName(dc), MapperDerivator.mapperFieldName(dc)).build())
+            .map(dc -> ParameterSpec.builder(cataMapperTypeName(dc, strict), MapperDerivator.mapperFieldName(dc)).build())
             .collect(toList()))
         .addStatement("return $L", wrapper)
         .build();
-
-    return result(methodSpec(cataMethod));
   }
 
-  private DeriveResult<DerivedCodeSpec> visitorDispatchImpl(VariableElement visitorParam, DeclaredType visitorType,
-      List<DataConstructor> constructors) {
+  /**
+   * @param strict if true, mappers receive the results for recursive fields, otherwise suppliers of those results.
+   */
+  private MethodSpec visitorDispatchImpl(String methodName, boolean strict, DeclaredType visitorType, List<DataConstructor> constructors) {
 
     NameAllocator nameAllocator = nameAllocator(constructors);
 
@@ -179,7 +195,7 @@ public class CataDerivator {
                                                                 .map(argument -> utils.types()
                                                                                      .isSameType(argument.type(), adt.typeConstructor()
                                                                                          .declaredType())
-                                                                                 ? ("() -> " +
+                                                                                 ? ((strict ? "" : "() -> ") +
                                                                                         nameAllocator.clone()
                                                                                             .newName(argument.fieldName(),
                                                                                                 argument.fieldName() + ' ' + "field") +
@@ -200,7 +216,7 @@ public class CataDerivator {
             .build())
         .build();
 
-    MethodSpec cataMethod = MethodSpec.methodBuilder("cata")
+    return MethodSpec.methodBuilder(methodName)
         .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
         .addTypeVariables(
             concat(adt.typeConstructor().typeVariables().stream(), Stream.of(adt.matchMethod().returnTypeVariable())).map(TypeVariableName::get)
@@ -209,14 +225,267 @@ public class CataDerivator {
             .getDeclaredType(FlavourImpl.findF(context.flavour(), utils.elements()), adt.typeConstructor().declaredType(),
                 adt.matchMethod().returnTypeVariable())))
         .addParameters(constructors.stream()
-            .map(dc -> ParameterSpec.builder(cataMapperTypeName(dc), MapperDerivator.mapperFieldName(dc)).build())
+            .map(dc -> ParameterSpec.builder(cataMapperTypeName(dc, strict), MapperDerivator.mapperFieldName(dc)).build())
             .collect(toList()))
         .addStatement("$T $L = $L.$L", TypeName.get(visitorType), nameAllocator.get("cata"), wrapper, nameAllocator.get("cata"))
         .addStatement("return $L -> $L.$L($L)", nameAllocator.get("adt var"), nameAllocator.get("adt var"),
             adt.matchMethod().element().getSimpleName(), nameAllocator.get("cata"))
         .build();
+  }
+
+  /**
+   * Same algebra as strictCata, but the traversal runs on explicit (heap allocated) stacks instead of the java stack, so that deep
+   * structures can be folded without StackOverflowError: nodes are visited children first, and each node with recursive fields pushes
+   * a reduction that runs once the nodes pushed after it are folded (ie. when the nodes stack is back to its mark).
+   *
+   * @param visitorType the visitor type, or null for functions dispatch.
+   */
+  private MethodSpec stackSafeCataMethod(DeclaredType visitorType, List<DataConstructor> constructors) {
+
+    NameAllocator nameAllocator = nameAllocator(constructors);
+    String adtVar = nameAllocator.get("adt var");
+    nameAllocator.newName(adt.typeConstructor().typeElement().getSimpleName().toString(), "adt type");
+    constructors.forEach(dc -> nameAllocator.newName(dc.name(), dc.name() + " class"));
+    String reductionClass = nameAllocator.newName("Reduction", "reduction class");
+    String mark = nameAllocator.newName("mark", "mark");
+    String reduce = nameAllocator.newName("reduce", "reduce");
+    String reductions = nameAllocator.newName("reductions", "reductions");
+    String nodes = nameAllocator.newName("nodes", "nodes");
+    String results = nameAllocator.newName("results", "results");
+    String step = nameAllocator.newName("step", "step");
+    constructors.forEach(dc -> nameAllocator.newName(dc.name() + "Step", dc.name() + " step"));
+
+    TypeName adtTypeName = TypeName.get(adt.typeConstructor().declaredType());
+    TypeName resultTypeName = TypeName.get(adt.matchMethod().returnTypeVariable());
+
+    Function<DataConstructor, CodeBlock> stepLambda = constructor -> {
+      NameAllocator fieldNames = nameAllocator.clone();
+      List<String> argNames = constructor.arguments()
+          .stream()
+          .map(DataArgument::fieldName)
+          .map(fn -> fieldNames.newName(fn, fn + " field"))
+          .collect(toList());
+      List<String> lambdaParams = concat(argNames.stream(), constructor.typeRestrictions()
+          .stream()
+          .map(TypeRestriction::idFunction)
+          .map(DataArgument::fieldName)
+          .map(fn -> fieldNames.newName(fn, fn + " field"))).collect(toList());
+      List<Integer> recursiveArgs = IntStream.range(0, argNames.size())
+          .filter(i -> utils.types().isSameType(constructor.arguments().get(i).type(), adt.typeConstructor().declaredType()))
+          .boxed()
+          .collect(toList());
+      List<String> resultNames = recursiveArgs.stream()
+          .map(i -> fieldNames.newName(argNames.get(i) + "Result", argNames.get(i) + " result"))
+          .collect(toList());
+
+      List<String> mapperArgs = new ArrayList<>(lambdaParams);
+      for (int i = 0; i < recursiveArgs.size(); i++) {
+        mapperArgs.set(recursiveArgs.get(i), resultNames.get(i));
+      }
+      CodeBlock mapperCall = CodeBlock.builder()
+          .add("$L.$L($L)", constructor.name(), MapperDerivator.mapperApplyMethod(utils, context, constructor),
+              Utils.joinStringsAsArguments(mapperArgs.stream()))
+          .build();
+
+      CodeBlock.Builder lambda = CodeBlock.builder().add("($L) -> ", Utils.joinStringsAsArguments(lambdaParams.stream()));
+      if (recursiveArgs.isEmpty()) {
+        lambda.add("$L.add($L)", results, mapperCall);
+      } else {
+        // the reduction is pushed first, so that it runs once the results of all children are available:
+        lambda.add("{\n$>$L.add(new $L($L.size()) {\n$>", reductions, reductionClass, nodes)
+            .add("@$T\n", Override.class)
+            .add("void $L() {\n$>", reduce);
+        for (int i = recursiveArgs.size() - 1; i >= 0; i--) {
+          lambda.add("$T $L = $L.remove($L.size() - 1);\n", resultTypeName, resultNames.get(i), results, results);
+        }
+        lambda.add("$L.add($L);\n", results, mapperCall).add("$<}\n$<});\n");
+        for (int i = recursiveArgs.size() - 1; i >= 0; i--) {
+          lambda.add("$L.add($L);\n", nodes, argNames.get(recursiveArgs.get(i)));
+        }
+        lambda.add("return null;\n$<}");
+      }
+      return lambda.build();
+    };
+
+    CodeBlock.Builder body = CodeBlock.builder()
+        .add("return $L -> {\n$>", adtVar)
+        .add(TypeSpec.classBuilder(reductionClass)
+            .addModifiers(Modifier.ABSTRACT)
+            .addField(TypeName.INT, mark, Modifier.FINAL)
+            .addMethod(MethodSpec.constructorBuilder()
+                .addParameter(TypeName.INT, mark)
+                .addStatement("this.$L = $L", mark, mark)
+                .build())
+            .addMethod(MethodSpec.methodBuilder(reduce).addModifiers(Modifier.ABSTRACT).build())
+            .build()
+            .toString())
+        .addStatement("$T<$L> $L = new $T<>()", ArrayList.class, reductionClass, reductions, ArrayList.class)
+        .addStatement("$T<$T> $L = new $T<>()", ArrayList.class, adtTypeName, nodes, ArrayList.class)
+        .addStatement("$T<$T> $L = new $T<>()", ArrayList.class, resultTypeName, results, ArrayList.class);
+
+    CodeBlock matchArgs;
+    if (visitorType != null) {
+      body.addStatement("$T $L = $T.$L($L)", utils.resolveToTypeName(visitorType,
+          tv -> utils.types().isSameType(tv, adt.matchMethod().returnTypeVariable()) ? Optional.of(ClassName.OBJECT) : Optional.empty()),
+          step, ClassName.get(context.targetPackage(), context.targetClassName()), MapperDerivator.visitorLambdaFactoryName(adt),
+          constructors.stream().map(stepLambda).reduce((cb1, cb2) -> CodeBlock.builder().add(cb1).add(",\n").add(cb2).build()).get());
+      matchArgs = CodeBlock.builder().add("$L", step).build();
+    } else {
+      for (DataConstructor constructor : constructors) {
+        body.add("$T $L = $L;\n", MapperDerivator.mapperTypeName(adt, constructor, context, utils, ClassName.OBJECT),
+            nameAllocator.get(constructor.name() + " step"), stepLambda.apply(constructor));
+      }
+      matchArgs = CodeBlock.builder()
+          .add("$L", Utils.joinStringsAsArguments(constructors.stream().map(dc -> nameAllocator.get(dc.name() + " step"))))
+          .build();
+    }
+
+    body.addStatement("$L.add($L)", nodes, adtVar)
+        .beginControlFlow("while (!$L.isEmpty() || !$L.isEmpty())", nodes, reductions)
+        .beginControlFlow("if ($1L.isEmpty() || $2L.size() > $1L.get($1L.size() - 1).$3L)", reductions, nodes, mark)
+        .addStatement("$L.remove($L.size() - 1).$L($L)", nodes, nodes, adt.matchMethod().element().getSimpleName(), matchArgs)
+        .nextControlFlow("else")
+        .addStatement("$L.remove($L.size() - 1).$L()", reductions, reductions, reduce)
+        .endControlFlow()
+        .endControlFlow()
+        .addStatement("return $L.get(0)", results)
+        .add("$<};\n");
+
+    return MethodSpec.methodBuilder("stackSafeCata")
+        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+        .addTypeVariables(
+            concat(adt.typeConstructor().typeVariables().stream(), Stream.of(adt.matchMethod().returnTypeVariable())).map(TypeVariableName::get)
+                .collect(toList()))
+        .returns(TypeName.get(utils.types()
+            .getDeclaredType(FlavourImpl.findF(context.flavour(), utils.elements()), adt.typeConstructor().declaredType(),
+                adt.matchMethod().returnTypeVariable())))
+        .addParameters(constructors.stream()
+            .map(dc -> ParameterSpec.builder(cataMapperTypeName(dc, true), MapperDerivator.mapperFieldName(dc)).build())
+            .collect(toList()))
+        .addCode(body.build())
+        .build();
+  }
+
+  /**
+   * Same algebra as strictCata, but the subtrees of constructors with several recursive fields are folded as fork/join tasks, down to
+   * the given depth, below which strictCata is used. Only derived when at least one constructor has several recursive fields.
+   *
+   * @param visitorType the visitor type, or null for functions dispatch.
+   */
+  private Stream<MethodSpec> parallelCataMethod(DeclaredType visitorType, List<DataConstructor> constructors) {
+
+    if (constructors.stream().noneMatch(dc -> recursiveArguments(dc).count() > 1)) {
+      return Stream.empty();
+    }
+
+    NameAllocator nameAllocator = nameAllocator(constructors);
+    String adtVar = nameAllocator.get("adt var");
+    String parallelDepth = nameAllocator.newName("parallelDepth", "parallel depth");
+    String strictCata = nameAllocator.newName("strictCata", "strict cata");
+    String taskClass = nameAllocator.newName("CataTask", "task class");
+    String depth = nameAllocator.newName("depth", "depth");
+
+    TypeName adtTypeName = TypeName.get(adt.typeConstructor().declaredType());
+    TypeName resultTypeName = TypeName.get(adt.matchMethod().returnTypeVariable());
+    TypeName functionTypeName = TypeName.get(utils.types()
+        .getDeclaredType(FlavourImpl.findF(context.flavour(), utils.elements()), adt.typeConstructor().declaredType(),
+            adt.matchMethod().returnTypeVariable()));
+    String functionApply = FlavourImpl.functionApplyMethod(utils, context);
+
+    Function<DataConstructor, CodeBlock> taskLambda = constructor -> {
+      if (recursiveArguments(constructor).count() == 0) {
+        return CodeBlock.builder().add("\n$L", constructor.name()).build();
+      }
+      NameAllocator fieldNames = nameAllocator.clone();
+      List<String> argNames = constructor.arguments()
+          .stream()
+          .map(DataArgument::fieldName)
+          .map(fn -> fieldNames.newName(fn, fn + " field"))
+          .collect(toList());
+      List<String> lambdaParams = concat(argNames.stream(), constructor.typeRestrictions()
+          .stream()
+          .map(TypeRestriction::idFunction)
+          .map(DataArgument::fieldName)
+          .map(fn -> fieldNames.newName(fn, fn + " field"))).collect(toList());
+      List<Integer> recursiveArgs = IntStream.range(0, argNames.size())
+          .filter(i -> utils.types().isSameType(constructor.arguments().get(i).type(), adt.typeConstructor().declaredType()))
+          .boxed()
+          .collect(toList());
+
+      // all recursive fields but the first are forked, the first one is folded by the current thread:
+      CodeBlock.Builder forks = CodeBlock.builder();
+      List<String> mapperArgs = new ArrayList<>(lambdaParams);
+      mapperArgs.set(recursiveArgs.get(0), "new " + taskClass + "(" + argNames.get(recursiveArgs.get(0)) + ", " + depth + " + 1).compute()");
+      for (int i = 1; i < recursiveArgs.size(); i++) {
+        String argName = argNames.get(recursiveArgs.get(i));
+        String task = fieldNames.newName(argName + "Task", argName + " task");
+        forks.add("$L $L = new $L($L, $L + 1);\n", taskClass, task, taskClass, argName, depth).add("$L.fork();\n", task);
+        mapperArgs.set(recursiveArgs.get(i), task + ".join()");
+      }
+      CodeBlock mapperCall = CodeBlock.builder()
+          .add("$L.$L($L)", constructor.name(), MapperDerivator.mapperApplyMethod(utils, context, constructor),
+              Utils.joinStringsAsArguments(mapperArgs.stream()))
+          .build();
+
+      CodeBlock.Builder lambda = CodeBlock.builder().add("\n($L) -> ", Utils.joinStringsAsArguments(lambdaParams.stream()));
+      return recursiveArgs.size() == 1
+             ? lambda.add(mapperCall).build()
+             : lambda.add("{\n$>").add(forks.build()).add("return $L;\n$<}", mapperCall).build();
+    };
+
+    CodeBlock lambdas = constructors.stream()
+        .map(taskLambda)
+        .reduce((cb1, cb2) -> CodeBlock.builder().add(cb1).add(",").add(cb2).build())
+        .get();
+
+    TypeSpec task = TypeSpec.classBuilder(taskClass)
+        .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "serial").build())
+        .superclass(ParameterizedTypeName.get(ClassName.get(RecursiveTask.class), resultTypeName))
+        .addField(adtTypeName, adtVar, Modifier.PRIVATE, Modifier.FINAL)
+        .addField(TypeName.INT, depth, Modifier.PRIVATE, Modifier.FINAL)
+        .addMethod(MethodSpec.constructorBuilder()
+            .addParameter(adtTypeName, adtVar)
+            .addParameter(TypeName.INT, depth)
+            .addStatement("this.$L = $L", adtVar, adtVar)
+            .addStatement("this.$L = $L", depth, depth)
+            .build())
+        .addMethod(MethodSpec.methodBuilder("compute")
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PROTECTED)
+            .returns(resultTypeName)
+            .beginControlFlow("if ($L >= $L)", depth, parallelDepth)
+            .addStatement("return $L.$L($L)", strictCata, functionApply, adtVar)
+            .endControlFlow()
+            .addStatement(visitorType != null
+                          ? "return $L.$L($T.$L($L))"
+                          : "return $L.$L($L)", visitorType != null
+                                                ? new Object[] { adtVar, adt.matchMethod().element().getSimpleName(),
+                ClassName.get(context.targetPackage(), context.targetClassName()), MapperDerivator.visitorLambdaFactoryName(adt), lambdas }
+                                                : new Object[] { adtVar, adt.matchMethod().element().getSimpleName(), lambdas })
+            .build())
+        .build();
+
+    String mappers = Utils.joinStringsAsArguments(constructors.stream().map(MapperDerivator::mapperFieldName));
+
+    return Stream.of(MethodSpec.methodBuilder("parallelCata")
+        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+        .addTypeVariables(
+            concat(adt.typeConstructor().typeVariables().stream(), Stream.of(adt.matchMethod().returnTypeVariable())).map(TypeVariableName::get)
+                .collect(toList()))
+        .returns(functionTypeName)
+        .addParameter(TypeName.INT, parallelDepth)
+        .addParameters(constructors.stream()
+            .map(dc -> ParameterSpec.builder(cataMapperTypeName(dc, true), MapperDerivator.mapperFieldName(dc)).build())
+            .collect(toList()))
+        .addStatement("$T $L = strictCata($L)", functionTypeName, strictCata, mappers)
+        .addCode("$L", task)
+        .addStatement("return $L -> $T.commonPool().invoke(new $L($L, 0))", adtVar, ForkJoinPool.class, taskClass, adtVar)
+        .build());
+  }
+
+  private Stream<DataArgument> recursiveArguments(DataConstructor dc) {
 
-    return result(methodSpec(cataMethod));
+    return dc.arguments().stream().filter(da -> utils.types().isSameType(da.type(), adt.typeConstructor().declaredType()));
   }
 
   private NameAllocator nameAllocator(List<DataConstructor> constructors) {
@@ -228,11 +497,16 @@ public class CataDerivator {
     return nameAllocator;
   }
 
-  TypeName cataMapperTypeName(DataConstructor dc) {
+  TypeName cataMapperTypeName(DataConstructor dc, boolean strict) {
+
+    TypeMirror recursionType = strict
+                               ? adt.matchMethod().returnTypeVariable()
+                               : utils.types()
+                                   .getDeclaredType(FlavourImpl.findF0(context.flavour(), utils.elements()), adt.matchMethod().returnTypeVariable());
 
     TypeName[] argsTypeNames = concat(dc.arguments().stream().map(DataArgument::type),
         dc.typeRestrictions().stream().map(TypeRestriction::idFunction).map(DataArgument::type)).map(t -> Utils.asBoxedType.visit(t, utils.types()))
-        .map(this::substituteTypeWithRecursionVar)
+        .map(tm -> substituteTypeWithRecursionVar(tm, recursionType))
         .map(TypeName::get)
         .toArray(TypeName[]::new);
 
@@ -240,14 +514,12 @@ public class CataDerivator {
            ? ((argsTypeNames.length == 0)
               ? ParameterizedTypeName.get(ClassName.get(FlavourImpl.findF0(context.flavour(), utils.elements())),
         TypeName.get(adt.matchMethod().returnTypeVariable()))
-              : ((argsTypeNames.length == 1)
+              : (!MapperDerivator.hasMapperInterface(dc)
                  ? ParameterizedTypeName.get(ClassName.get(FlavourImpl.findF(context.flavour(), utils.elements())), argsTypeNames[0],
                   TypeName.get(adt.matchMethod().returnTypeVariable()))
                  : ParameterizedTypeName.get(Utils.getClassName(context, MapperDerivator.mapperInterfaceName(dc)), concat(
                      concat(dc.typeVariables().stream().map(TypeVariableName::get),
-                         fold(MapperDerivator.findInductiveArgument(utils, adt, dc), Stream.of(), tm -> Stream.of(
-                             ParameterizedTypeName.get(ClassName.get(FlavourImpl.findF0(context.flavour(), utils.elements())),
-                                 TypeName.get(adt.matchMethod().returnTypeVariable()))))),
+                         fold(MapperDerivator.findInductiveArgument(utils, adt, dc), Stream.of(), tm -> Stream.of(TypeName.get(recursionType)))),
                      Stream.of(TypeVariableName.get(adt.matchMethod().returnTypeVariable()))).toArray(TypeName[]::new))))
 
            : TypeName.get(utils.types()
@@ -255,14 +527,14 @@ public class CataDerivator {
                    .visitorType()
                    .getTypeArguments()
                    .stream()
-                   .map(this::substituteTypeWithRecursionVar)
+                   .map(tm -> substituteTypeWithRecursionVar(tm, recursionType))
                    .toArray(TypeMirror[]::new)));
   }
 
-  TypeMirror substituteTypeWithRecursionVar(TypeMirror tm) {
+  TypeMirror substituteTypeWithRecursionVar(TypeMirror tm, TypeMirror recursionType) {
 
     return utils.types().isSameType(tm, adt.typeConstructor().declaredType())
-           ? utils.types().getDeclaredType(FlavourImpl.findF0(context.flavour(), utils.elements()), adt.matchMethod().returnTypeVariable())
+           ? recursionType
            : tm;
   }
 }
@@ -0,0 +1,938 @@
+/*
+ * Copyright (c) 2015, Jean-Baptiste Giraudeau <jb@giraudeau.info>
+ *
+ * This file is part of "Derive4J - Annotation Processor".
+ *
+ * "Derive4J - Annotation Processor" is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * "Derive4J - Annotation Processor" is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with "Derive4J - Annotation Processor".  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.derive4j.processor.derivator;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.NameAllocator;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import org.derive4j.Data;
+import org.derive4j.Make;
+import org.derive4j.Visibility;
+import org.derive4j.processor.DerivingProcessor;
+import org.derive4j.processor.Utils;
+import org.derive4j.processor.api.DeriveResult;
+import org.derive4j.processor.api.DeriveUtils;
+import org.derive4j.processor.api.DerivedCodeSpec;
+import org.derive4j.processor.api.model.AlgebraicDataType;
+import org.derive4j.processor.api.model.DataArgument;
+import org.derive4j.processor.api.model.DataConstructor;
+import org.derive4j.processor.api.model.DeriveContext;
+
+import static org.derive4j.processor.Utils.joinStringsAsArguments;
+import static org.derive4j.processor.Utils.traverseResults;
+import static org.derive4j.processor.api.DeriveMessage.message;
+import static org.derive4j.processor.api.DeriveResult.error;
+import static org.derive4j.processor.api.DeriveResult.result;
+import static org.derive4j.processor.api.MessageLocalization.onElement;
+import static org.derive4j.processor.derivator.StrictConstructorDerivator.findAbstractEquals;
+import static org.derive4j.processor.derivator.StrictConstructorDerivator.findAbstractHashCode;
+import static org.derive4j.processor.derivator.StrictConstructorDerivator.findAbstractToString;
+
+/**
+ * Derives encode(value, buffer) and decode(buffer), a compact binary encoding of data types: a constructor tag byte (omitted if there is
+ * only one constructor) followed by the fields of the constructor, with zig-zag varints for integral primitives, length-prefixed UTF-8
+ * for strings, ordinals for enums, and nested data types encoded in place by their own derived codec. Instances built by the derived
+ * constructors are encoded from their fields, without going through the match method.
+ * For data types that are not recursive (nor any of the data types of their fields), view(buffer, offset) returns a flyweight over the
+ * encoded bytes, whose match method decodes the fields of the constructor on demand with absolute reads, leaving the buffer untouched.
+ * For recursive data types with a lazy constructor, decodeLazy(buffer, offset) decodes the recursive fields as lazy values.
+ */
+public final class CodecDerivator {
+
+  private CodecDerivator() {
+  }
+
+  private static final String BUFFER = "buffer";
+  private static final String OFFSET = "offset";
+  private static final String INDEX = "index";
+  private static final String TAG = "tag";
+  private static final String VIEW = "View";
+  private static final String MATCH_VIEW = "matchView";
+
+  private enum Helper {
+    VarInt, VarLong, Utf8
+  }
+
+  private static final class FieldCodec {
+    final Function<String, CodeBlock> encode;
+    final CodeBlock decode;
+    // absolute reads, for views:
+    final Function<String, CodeBlock> read;
+    final Function<String, CodeBlock> skip;
+    final boolean viewable;
+    final boolean self;
+    final Set<Helper> helpers;
+    final Optional<FieldSpec> enumValues;
+
+    FieldCodec(Function<String, CodeBlock> encode, CodeBlock decode, Function<String, CodeBlock> read, Function<String, CodeBlock> skip,
+        boolean viewable, boolean self, Set<Helper> helpers, Optional<FieldSpec> enumValues) {
+
+      this.encode = encode;
+      this.decode = decode;
+      this.read = read;
+      this.skip = skip;
+      this.viewable = viewable;
+      this.self = self;
+      this.helpers = helpers;
+      this.enumValues = enumValues;
+    }
+
+    static FieldCodec of(String encodeFormat, String decodeFormat, String readFormat, Function<String, CodeBlock> skip,
+        Helper... helpers) {
+
+      Set<Helper> helperSet = EnumSet.noneOf(Helper.class);
+      helperSet.addAll(Arrays.asList(helpers));
+      return new FieldCodec(value -> CodeBlock.of(encodeFormat, BUFFER, value), CodeBlock.of(decodeFormat, BUFFER),
+          index -> CodeBlock.of(readFormat, BUFFER, index), skip, true, false, helperSet, Optional.empty());
+    }
+
+    static Function<String, CodeBlock> skipBytes(int size) {
+
+      return index -> CodeBlock.of("$L + $L", index, size);
+    }
+
+    static Function<String, CodeBlock> skipVarInt() {
+
+      return index -> CodeBlock.of("skipVarInt($L, $L)", BUFFER, index);
+    }
+  }
+
+  public static DeriveResult<DerivedCodeSpec> derive(AlgebraicDataType adt, DeriveContext deriveContext, DeriveUtils deriveUtils) {
+
+    TypeElement typeElement = adt.typeConstructor().typeElement();
+    List<DataConstructor> constructors = adt.dataConstruction().constructors();
+
+    if (!adt.typeConstructor().typeVariables().isEmpty()) {
+      return error(message("Codec is not supported for data types with type parameters", onElement(typeElement)));
+    }
+    if (constructors.size() > 256) {
+      return error(message("Codec is not supported for data types with more than 256 constructors", onElement(typeElement)));
+    }
+    if (constructors.isEmpty()) {
+      return result(DerivedCodeSpec.none());
+    }
+    if (typeElement.getKind() == ElementKind.ENUM) {
+      return result(enumCodec(adt, deriveContext));
+    }
+
+    return traverseResults(constructors, dc -> traverseResults(dc.arguments(), da -> fieldCodec(da, adt, deriveUtils))).map(
+        fieldCodecs -> codec(adt, fieldCodecs, deriveContext, deriveUtils));
+  }
+
+  private static DerivedCodeSpec codec(AlgebraicDataType adt, List<List<FieldCodec>> fieldCodecs, DeriveContext deriveContext,
+      DeriveUtils deriveUtils) {
+
+    List<DataConstructor> constructors = adt.dataConstruction().constructors();
+    boolean tagged = constructors.size() > 1;
+    boolean viewable = fieldCodecs.stream().flatMap(List::stream).allMatch(fieldCodec -> fieldCodec.viewable);
+    boolean lazyDecodable = deriveContext.makes().contains(Make.lazyConstructor) &&
+        fieldCodecs.stream().flatMap(List::stream).anyMatch(fieldCodec -> fieldCodec.self) &&
+        fieldCodecs.stream().flatMap(List::stream).allMatch(fieldCodec -> fieldCodec.viewable || fieldCodec.self);
+    // size prefixes are only useful to decodeLazy:
+    boolean sized = lazyDecodable &&
+        fieldCodecs.stream().anyMatch(codecs -> IntStream.range(0, codecs.size()).anyMatch(i -> sizePrefixed(codecs, i)));
+    TypeName adtTypeName = TypeName.get(adt.typeConstructor().declaredType());
+
+    NameAllocator nameAllocator = new NameAllocator();
+    nameAllocator.newName(BUFFER, "buffer arg");
+    String adtVar = nameAllocator.newName(Utils.uncapitalize(adt.typeConstructor().typeElement().getSimpleName()), "adt var");
+
+    // encoding of instances built by the derived constructors:
+    CodeBlock.Builder encode = CodeBlock.builder();
+    for (int i = 0; i < constructors.size(); i++) {
+      DataConstructor dc = constructors.get(i);
+      ClassName implClass = Utils.getClassName(deriveContext, StrictConstructorDerivator.implClassName(adt, dc, deriveUtils));
+      String implVar = nameAllocator.clone().newName(Utils.uncapitalize(implClass.simpleName()), "impl var");
+      encode.beginControlFlow("if ($L instanceof $T)", adtVar, implClass);
+      if (!dc.arguments().isEmpty()) {
+        encode.addStatement("$T $L = ($T) $L", implClass, implVar, implClass, adtVar);
+      }
+      encode.add(encodeConstructor(tagged, sized, i, dc, fieldCodecs.get(i), da -> implVar + '.' + da.fieldName()))
+          .addStatement("return")
+          .endControlFlow();
+    }
+    if (deriveContext.makes().contains(Make.lazyConstructor)) {
+      ClassName lazyClass = Utils.getClassName(deriveContext, "Lazy");
+      encode.beginControlFlow("if ($L instanceof $T)", adtVar, lazyClass)
+          .addStatement("encode((($T) $L).eval(), $L)", lazyClass, adtVar, BUFFER)
+          .addStatement("return")
+          .endControlFlow();
+    }
+    if (viewable) {
+      // views are re-encoded by copying their bytes:
+      ClassName viewClass = Utils.getClassName(deriveContext, VIEW);
+      String viewVar = nameAllocator.clone().newName("view", "view var");
+      encode.beginControlFlow("if ($L instanceof $T)", adtVar, viewClass)
+          .addStatement("$T $L = ($T) $L", viewClass, viewVar, viewClass, adtVar)
+          .beginControlFlow("for (int i = $1L.offset, end = skip($1L.buffer, i); i < end; i++)", viewVar)
+          .addStatement("$L.put($L.buffer.get(i))", BUFFER, viewVar)
+          .endControlFlow()
+          .addStatement("return")
+          .endControlFlow();
+    }
+
+    // instances that were not built by the derived constructors:
+    CodeBlock fallbackLambdas = constructors.stream().map(dc -> {
+      NameAllocator fieldNames = nameAllocator.clone();
+      List<String> params = dc.arguments()
+          .stream()
+          .map(DataArgument::fieldName)
+          .map(fn -> fieldNames.newName(fn, fn + " field"))
+          .collect(Collectors.toList());
+      int index = constructors.indexOf(dc);
+      return CodeBlock.builder()
+          .add("\n($L) -> {\n$>", joinStringsAsArguments(params.stream()))
+          .add(encodeConstructor(tagged, sized, index, dc, fieldCodecs.get(index), da -> params.get(dc.arguments().indexOf(da))))
+          .addStatement("return null")
+          .add("$<}")
+          .build();
+    }).reduce((cb1, cb2) -> CodeBlock.builder().add(cb1).add(",").add(cb2).build()).get();
+
+    // the lambda bodies are statements themselves, so the match is not added as a statement:
+    encode.add(adt.dataConstruction().isVisitorDispatch()
+               ? "$L.<$T>$L($T.$L($>$L$<));\n"
+               : "$L.<$T>$L($>$L$<);\n", adt.dataConstruction().isVisitorDispatch()
+                                           ? new Object[] { adtVar, Void.class, adt.matchMethod().element().getSimpleName(),
+        ClassName.get(deriveContext.targetPackage(), deriveContext.targetClassName()), MapperDerivator.visitorLambdaFactoryName(adt),
+        fallbackLambdas }
+                                           : new Object[] { adtVar, Void.class, adt.matchMethod().element().getSimpleName(),
+                                               fallbackLambdas });
+
+    MethodSpec.Builder encodeMethod = MethodSpec.methodBuilder("encode")
+        .addModifiers(Modifier.STATIC)
+        .addParameter(adtTypeName, adtVar)
+        .addParameter(ByteBuffer.class, BUFFER)
+        .addCode(encode.build());
+
+    // decoding, through the derived constructors:
+    NameAllocator decodeNames = new NameAllocator();
+    decodeNames.newName(BUFFER, "buffer arg");
+    decodeNames.newName(TAG, "tag var");
+    CodeBlock decode = tagged
+                       ? switchOnTag(CodeBlock.of("$L.get()", BUFFER), constructors.stream()
+                           .map(dc -> decodeConstructor(dc, sized, fieldCodecs.get(constructors.indexOf(dc)), decodeNames.clone()))
+                           .collect(Collectors.toList()))
+                       : decodeConstructor(constructors.get(0), sized, fieldCodecs.get(0), decodeNames);
+
+    MethodSpec.Builder decodeMethod = MethodSpec.methodBuilder("decode")
+        .addModifiers(Modifier.STATIC)
+        .addParameter(ByteBuffer.class, BUFFER)
+        .returns(adtTypeName)
+        .addCode(decode);
+
+    if (deriveContext.visibility() != Visibility.Smart) {
+      encodeMethod.addModifiers(Modifier.PUBLIC);
+      decodeMethod.addModifiers(Modifier.PUBLIC);
+    }
+
+    Set<Helper> helpers = EnumSet.noneOf(Helper.class);
+    Map<String, FieldSpec> enumValues = new LinkedHashMap<>();
+    fieldCodecs.stream().flatMap(List::stream).forEach(fieldCodec -> {
+      helpers.addAll(fieldCodec.helpers);
+      fieldCodec.enumValues.ifPresent(field -> enumValues.put(field.name, field));
+    });
+
+    List<MethodSpec> methods = new ArrayList<>();
+    methods.add(encodeMethod.build());
+    methods.add(decodeMethod.build());
+    if (sized) {
+      methods.add(MethodSpec.methodBuilder("encodeSized")
+          .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+          .addParameter(adtTypeName, adtVar)
+          .addParameter(ByteBuffer.class, BUFFER)
+          .addStatement("int start = $L.position()", BUFFER)
+          .addStatement("$L.putInt(0)", BUFFER)
+          .addStatement("encode($L, $L)", adtVar, BUFFER)
+          .addStatement("$1L.putInt(start, $1L.position() - start - 4)", BUFFER)
+          .build());
+      methods.add(MethodSpec.methodBuilder("decodeSized")
+          .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+          .addParameter(ByteBuffer.class, BUFFER)
+          .returns(adtTypeName)
+          .addStatement("int size = $L.getInt()", BUFFER)
+          .addStatement("int end = $L.position() + size", BUFFER)
+          .addStatement("$T $L = decode($L)", adtTypeName, adtVar, BUFFER)
+          .beginControlFlow("if ($L.position() != end)", BUFFER)
+          .addStatement("throw new $T($S + size)", IllegalArgumentException.class, "Invalid size: ")
+          .endControlFlow()
+          .addStatement("return $L", adtVar)
+          .build());
+    }
+    methods.addAll(helperMethods(helpers, viewable || lazyDecodable));
+
+    DerivedCodeSpec codec = DerivedCodeSpec.codeSpec(Collections.emptyList(), new ArrayList<>(enumValues.values()), methods,
+        Collections.emptyList(), Collections.emptyList());
+
+    if (viewable) {
+      codec = codec.append(view(adt, fieldCodecs, deriveContext, deriveUtils));
+    }
+    if (lazyDecodable) {
+      codec = codec.append(lazyDecoder(adt, fieldCodecs, deriveContext));
+    }
+    return codec;
+  }
+
+  private static DerivedCodeSpec view(AlgebraicDataType adt, List<List<FieldCodec>> fieldCodecs, DeriveContext deriveContext,
+      DeriveUtils deriveUtils) {
+
+    List<DataConstructor> constructors = adt.dataConstruction().constructors();
+    boolean tagged = constructors.size() > 1;
+    TypeElement typeElement = adt.typeConstructor().typeElement();
+    TypeName adtTypeName = TypeName.get(adt.typeConstructor().declaredType());
+    ClassName viewClass = Utils.getClassName(deriveContext, VIEW);
+    String fieldsOffset = tagged
+                          ? OFFSET + " + 1"
+                          : OFFSET;
+
+    NameAllocator nameAllocator = readNameAllocator();
+    adt.matchMethod().element().getParameters().forEach(p -> nameAllocator.newName(p.getSimpleName().toString(), p));
+
+    List<CodeBlock> matches = constructors.stream()
+        .map(dc -> readConstructor(dc, fieldCodecs.get(constructors.indexOf(dc)), fieldsOffset, nameAllocator.clone(),
+            locals -> CodeBlock.of("$L.$L($L)", dc.deconstructor().visitorParam().getSimpleName(),
+                dc.deconstructor().visitorMethod().getSimpleName(), joinStringsAsArguments(locals.stream()))))
+        .collect(Collectors.toList());
+
+    List<CodeBlock> skips = constructors.stream().map(dc -> {
+      List<FieldCodec> codecs = fieldCodecs.get(constructors.indexOf(dc));
+      if (codecs.isEmpty()) {
+        return CodeBlock.builder().addStatement("return $L", fieldsOffset).build();
+      }
+      CodeBlock.Builder skip = CodeBlock.builder();
+      for (int i = 0; i < codecs.size() - 1; i++) {
+        skip.addStatement(i == 0
+                          ? "int $L = $L"
+                          : "$L = $L", INDEX, skipField(codecs, i, i == 0
+                                                                   ? fieldsOffset
+                                                                   : INDEX));
+      }
+      return skip.addStatement("return $L", skipField(codecs, codecs.size() - 1, codecs.size() == 1
+                                                                                ? fieldsOffset
+                                                                                : INDEX)).build();
+    }).collect(Collectors.toList());
+
+    CodeBlock tagByte = CodeBlock.of("$L.get($L)", BUFFER, OFFSET);
+    MethodSpec matchMethod = Utils.overrideMethodBuilder(adt.matchMethod().element()).build();
+
+    TypeSpec.Builder viewTypeSpec = TypeSpec.classBuilder(VIEW)
+        .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+        .addField(ByteBuffer.class, BUFFER, Modifier.PRIVATE, Modifier.FINAL)
+        .addField(TypeName.INT, OFFSET, Modifier.PRIVATE, Modifier.FINAL)
+        .addMethod(MethodSpec.constructorBuilder()
+            .addParameter(ByteBuffer.class, BUFFER)
+            .addParameter(TypeName.INT, OFFSET)
+            .addStatement("this.$1L = $1L", BUFFER)
+            .addStatement("this.$1L = $1L", OFFSET)
+            .build())
+        .addMethod(matchMethod.toBuilder().addStatement("return $L($L, $L, $L)", MATCH_VIEW, BUFFER, OFFSET, matchArguments(adt)).build());
+
+    // the match method of views, also used to match encoded values without allocating a view:
+    MethodSpec matchView = MethodSpec.methodBuilder(MATCH_VIEW)
+        .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+        .addTypeVariables(matchMethod.typeVariables)
+        .returns(matchMethod.returnType)
+        .addParameter(ByteBuffer.class, BUFFER)
+        .addParameter(TypeName.INT, OFFSET)
+        .addParameters(matchMethod.parameters)
+        .addCode(tagged
+                 ? switchOnTag(tagByte, matches)
+                 : matches.get(0))
+        .build();
+
+    if (typeElement.getKind() == ElementKind.INTERFACE) {
+      viewTypeSpec.addSuperinterface(adtTypeName);
+    } else {
+      viewTypeSpec.superclass(adtTypeName);
+    }
+
+    // equals, hashCode and toString are implemented on the decoded value:
+    List<MethodSpec> objectMethods = new ArrayList<>();
+    findAbstractEquals(deriveUtils, typeElement).ifPresent(equals -> objectMethods.add(
+        deriveUtils.overrideMethodBuilder(equals, adt.typeConstructor().declaredType())
+            .addStatement("return this.decode().equals($L)", equals.getParameters().get(0).getSimpleName())
+            .build()));
+    findAbstractHashCode(deriveUtils, typeElement).ifPresent(hashCode -> objectMethods.add(
+        deriveUtils.overrideMethodBuilder(hashCode, adt.typeConstructor().declaredType())
+            .addStatement("return this.decode().hashCode()")
+            .build()));
+    findAbstractToString(deriveUtils, typeElement).ifPresent(toString -> objectMethods.add(
+        deriveUtils.overrideMethodBuilder(toString, adt.typeConstructor().declaredType())
+            .addStatement("return this.decode().toString()")
+            .build()));
+    if (!objectMethods.isEmpty()) {
+      viewTypeSpec.addMethod(MethodSpec.methodBuilder("decode")
+          .addModifiers(Modifier.PRIVATE)
+          .returns(adtTypeName)
+          .addStatement("$1T $2L = this.$2L.duplicate().order(this.$2L.order())", ByteBuffer.class, BUFFER)
+          .addStatement("$L.position($L)", BUFFER, OFFSET)
+          .addStatement("return $L.decode($L)", ClassName.get(deriveContext.targetPackage(), deriveContext.targetClassName()), BUFFER)
+          .build()).addMethods(objectMethods);
+    }
+
+    MethodSpec.Builder viewMethod = MethodSpec.methodBuilder("view")
+        .addModifiers(Modifier.STATIC)
+        .addParameter(ByteBuffer.class, BUFFER)
+        .addParameter(TypeName.INT, OFFSET)
+        .returns(adtTypeName)
+        .addStatement("return new $T($L, $L)", viewClass, BUFFER, OFFSET);
+
+    MethodSpec.Builder skipMethod = MethodSpec.methodBuilder("skip")
+        .addModifiers(Modifier.STATIC)
+        .addParameter(ByteBuffer.class, BUFFER)
+        .addParameter(TypeName.INT, OFFSET)
+        .returns(TypeName.INT)
+        .addCode(tagged
+                 ? switchOnTag(tagByte, skips)
+                 : skips.get(0));
+
+    if (deriveContext.visibility() != Visibility.Smart) {
+      viewMethod.addModifiers(Modifier.PUBLIC);
+      skipMethod.addModifiers(Modifier.PUBLIC);
+    }
+
+    return DerivedCodeSpec.codeSpec(Collections.singletonList(viewTypeSpec.build()), Collections.emptyList(),
+        Arrays.asList(viewMethod.build(), skipMethod.build(), matchView), Collections.emptyList(), Collections.emptyList());
+  }
+
+  /**
+   * Matches the value encoded at the given offset of the buffer, for data types that have views, without allocating any: enum views are
+   * their constants, other views delegate to the static matchView.
+   *
+   * @param matchArguments the arguments of the match method (ie. the visitor, or the case lambdas).
+   */
+  static CodeBlock matchEncoded(AlgebraicDataType adt, String buffer, String offset, String matchArguments) {
+
+    return adt.typeConstructor().typeElement().getKind() == ElementKind.ENUM
+           ? CodeBlock.of("view($L, $L).$L($L)", buffer, offset, adt.matchMethod().element().getSimpleName(), matchArguments)
+           : CodeBlock.of("$L($L, $L, $L)", MATCH_VIEW, buffer, offset, matchArguments);
+  }
+
+  static String matchArguments(AlgebraicDataType adt) {
+
+    return joinStringsAsArguments(adt.matchMethod().element().getParameters().stream().map(p -> p.getSimpleName().toString()));
+  }
+
+  /**
+   * Derives decodeLazy(buffer, offset), that decodes the value at the given offset and returns its fields of the data type itself as
+   * lazy values, that are only decoded if evaluated. Other fields are read as they would be by a view.
+   */
+  private static DerivedCodeSpec lazyDecoder(AlgebraicDataType adt, List<List<FieldCodec>> fieldCodecs, DeriveContext deriveContext) {
+
+    List<DataConstructor> constructors = adt.dataConstruction().constructors();
+    boolean tagged = constructors.size() > 1;
+    TypeName adtTypeName = TypeName.get(adt.typeConstructor().declaredType());
+    String fieldsOffset = tagged
+                          ? OFFSET + " + 1"
+                          : OFFSET;
+
+    NameAllocator nameAllocator = readNameAllocator();
+    List<CodeBlock> decodes = constructors.stream()
+        .map(dc -> readConstructor(dc, fieldCodecs.get(constructors.indexOf(dc)), fieldsOffset, nameAllocator.clone(),
+            locals -> CodeBlock.of("$L($L)", dc.name(), joinStringsAsArguments(locals.stream()))))
+        .collect(Collectors.toList());
+
+    MethodSpec.Builder decodeLazy = MethodSpec.methodBuilder("decodeLazy")
+        .addModifiers(Modifier.STATIC)
+        .addParameter(ByteBuffer.class, BUFFER)
+        .addParameter(TypeName.INT, OFFSET)
+        .returns(adtTypeName)
+        .addCode(tagged
+                 ? switchOnTag(CodeBlock.of("$L.get($L)", BUFFER, OFFSET), decodes)
+                 : decodes.get(0));
+    if (deriveContext.visibility() != Visibility.Smart) {
+      decodeLazy.addModifiers(Modifier.PUBLIC);
+    }
+
+    MethodSpec lazyNode = MethodSpec.methodBuilder("lazyNode")
+        .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+        .addParameter(ByteBuffer.class, BUFFER)
+        .addParameter(TypeName.INT, OFFSET)
+        .returns(adtTypeName)
+        .addStatement("return lazy(() -> decodeLazy($L, $L))", BUFFER, OFFSET)
+        .build();
+
+    return DerivedCodeSpec.methodSpecs(Arrays.asList(decodeLazy.build(), lazyNode));
+  }
+
+  private static NameAllocator readNameAllocator() {
+
+    NameAllocator nameAllocator = new NameAllocator();
+    nameAllocator.newName(BUFFER, "buffer");
+    nameAllocator.newName(OFFSET, "offset");
+    nameAllocator.newName(INDEX, "index var");
+    nameAllocator.newName(TAG, "tag var");
+    return nameAllocator;
+  }
+
+  /**
+   * The fields of the constructor are read with absolute reads, each one being skipped to find the offset of the next one.
+   */
+  private static CodeBlock readConstructor(DataConstructor dc, List<FieldCodec> codecs, String fieldsOffset, NameAllocator nameAllocator,
+      Function<List<String>, CodeBlock> result) {
+
+    CodeBlock.Builder read = CodeBlock.builder();
+    List<String> locals = new ArrayList<>();
+    for (int i = 0; i < codecs.size(); i++) {
+      DataArgument da = dc.arguments().get(i);
+      String local = nameAllocator.newName(da.fieldName(), da.fieldName() + " field");
+      locals.add(local);
+      read.addStatement("$T $L = $L", TypeName.get(da.type()), local, readField(codecs, i, i == 0
+                                                                                         ? fieldsOffset
+                                                                                         : INDEX));
+      if (i == 0 && codecs.size() > 1) {
+        read.addStatement("int $L = $L", INDEX, skipField(codecs, i, fieldsOffset));
+      } else if (i < codecs.size() - 1) {
+        read.addStatement("$L = $L", INDEX, skipField(codecs, i, INDEX));
+      }
+    }
+    return read.addStatement("return $L", result.apply(locals)).build();
+  }
+
+  /**
+   * When decodeLazy is derived, fields of the data type itself that are followed by other fields are prefixed by their size (as an int,
+   * that is written once the field is encoded), so that the following fields can be found without reading them.
+   */
+  private static boolean sizePrefixed(List<FieldCodec> codecs, int field) {
+
+    return codecs.get(field).self && field < codecs.size() - 1;
+  }
+
+  private static CodeBlock readField(List<FieldCodec> codecs, int field, String offset) {
+
+    return codecs.get(field).read.apply(sizePrefixed(codecs, field)
+                                        ? offset + " + 4"
+                                        : offset);
+  }
+
+  private static CodeBlock skipField(List<FieldCodec> codecs, int field, String offset) {
+
+    return sizePrefixed(codecs, field)
+           ? CodeBlock.of("$L + 4 + $L.getInt($L)", offset, BUFFER, offset)
+           : codecs.get(field).skip.apply(offset);
+  }
+
+  private static CodeBlock switchOnTag(CodeBlock tagByte, List<CodeBlock> cases) {
+
+    CodeBlock.Builder switchOnTag = CodeBlock.builder()
+        .addStatement("int $L = $L & 0xFF", TAG, tagByte)
+        .beginControlFlow("switch ($L)", TAG);
+    for (int i = 0; i < cases.size(); i++) {
+      switchOnTag.beginControlFlow("case $L:", i).add(cases.get(i)).endControlFlow();
+    }
+    return switchOnTag.add("default:\n$>")
+        .addStatement("throw new $T($S + $L)", IllegalArgumentException.class, "Invalid constructor tag: ", TAG)
+        .add("$<")
+        .endControlFlow()
+        .build();
+  }
+
+  private static CodeBlock encodeConstructor(boolean tagged, boolean sized, int index, DataConstructor dc, List<FieldCodec> fieldCodecs,
+      Function<DataArgument, String> fieldAccess) {
+
+    CodeBlock.Builder encode = CodeBlock.builder();
+    if (tagged) {
+      encode.addStatement("$L.put((byte) $L)", BUFFER, index);
+    }
+    for (int i = 0; i < fieldCodecs.size(); i++) {
+      encode.addStatement("$L", sized && sizePrefixed(fieldCodecs, i)
+                                ? CodeBlock.of("encodeSized($L, $L)", fieldAccess.apply(dc.arguments().get(i)), BUFFER)
+                                : fieldCodecs.get(i).encode.apply(fieldAccess.apply(dc.arguments().get(i))));
+    }
+    return encode.build();
+  }
+
+  private static CodeBlock decodeConstructor(DataConstructor dc, boolean sized, List<FieldCodec> fieldCodecs, NameAllocator nameAllocator) {
+
+    CodeBlock.Builder decode = CodeBlock.builder();
+    List<String> locals = new ArrayList<>();
+    for (int i = 0; i < fieldCodecs.size(); i++) {
+      DataArgument da = dc.arguments().get(i);
+      String local = nameAllocator.newName(da.fieldName(), da.fieldName() + " field");
+      locals.add(local);
+      decode.addStatement("$T $L = $L", TypeName.get(da.type()), local, sized && sizePrefixed(fieldCodecs, i)
+                                                                        ? CodeBlock.of("decodeSized($L)", BUFFER)
+                                                                        : fieldCodecs.get(i).decode);
+    }
+    return decode.addStatement("return $L($L)", dc.name(), joinStringsAsArguments(locals.stream())).build();
+  }
+
+  private static DerivedCodeSpec enumCodec(AlgebraicDataType adt, DeriveContext deriveContext) {
+
+    FieldSpec values = enumValuesField(adt.typeConstructor().typeElement());
+    String adtVar = Utils.uncapitalize(adt.typeConstructor().typeElement().getSimpleName());
+
+    MethodSpec.Builder encodeMethod = MethodSpec.methodBuilder("encode")
+        .addModifiers(Modifier.STATIC)
+        .addParameter(TypeName.get(adt.typeConstructor().declaredType()), adtVar)
+        .addParameter(ByteBuffer.class, BUFFER)
+        .addStatement("putVarInt($L, $L.ordinal())", BUFFER, adtVar);
+
+    MethodSpec.Builder decodeMethod = MethodSpec.methodBuilder("decode")
+        .addModifiers(Modifier.STATIC)
+        .addParameter(ByteBuffer.class, BUFFER)
+        .returns(TypeName.get(adt.typeConstructor().declaredType()))
+        .addStatement("return $N[getVarInt($L)]", values, BUFFER);
+
+    // the constants are their own views:
+    MethodSpec.Builder viewMethod = MethodSpec.methodBuilder("view")
+        .addModifiers(Modifier.STATIC)
+        .addParameter(ByteBuffer.class, BUFFER)
+        .addParameter(TypeName.INT, OFFSET)
+        .returns(TypeName.get(adt.typeConstructor().declaredType()))
+        .addStatement("return $N[getVarInt($L, $L)]", values, BUFFER, OFFSET);
+
+    MethodSpec.Builder skipMethod = MethodSpec.methodBuilder("skip")
+        .addModifiers(Modifier.STATIC)
+        .addParameter(ByteBuffer.class, BUFFER)
+        .addParameter(TypeName.INT, OFFSET)
+        .returns(TypeName.INT)
+        .addStatement("return skipVarInt($L, $L)", BUFFER, OFFSET);
+
+    if (deriveContext.visibility() != Visibility.Smart) {
+      encodeMethod.addModifiers(Modifier.PUBLIC);
+      decodeMethod.addModifiers(Modifier.PUBLIC);
+      viewMethod.addModifiers(Modifier.PUBLIC);
+      skipMethod.addModifiers(Modifier.PUBLIC);
+    }
+
+    List<MethodSpec> methods = new ArrayList<>();
+    methods.add(encodeMethod.build());
+    methods.add(decodeMethod.build());
+    methods.add(viewMethod.build());
+    methods.add(skipMethod.build());
+    methods.addAll(helperMethods(EnumSet.of(Helper.VarInt), true));
+
+    return DerivedCodeSpec.codeSpec(Collections.emptyList(), Collections.singletonList(values), methods, Collections.emptyList(),
+        Collections.emptyList());
+  }
+
+  private static DeriveResult<FieldCodec> fieldCodec(DataArgument da, AlgebraicDataType adt, DeriveUtils deriveUtils) {
+
+    switch (da.type().getKind()) {
+      case BOOLEAN:
+        return result(FieldCodec.of("$L.put((byte) ($L ? 1 : 0))", "$L.get() != 0", "$L.get($L) != 0", FieldCodec.skipBytes(1)));
+      case BYTE:
+        return result(FieldCodec.of("$L.put($L)", "$L.get()", "$L.get($L)", FieldCodec.skipBytes(1)));
+      case SHORT:
+        return result(FieldCodec.of("putVarInt($L, $L)", "(short) getVarInt($L)", "(short) getVarInt($L, $L)", FieldCodec.skipVarInt(),
+            Helper.VarInt));
+      case CHAR:
+        return result(FieldCodec.of("putVarInt($L, $L)", "(char) getVarInt($L)", "(char) getVarInt($L, $L)", FieldCodec.skipVarInt(),
+            Helper.VarInt));
+      case INT:
+        return result(FieldCodec.of("putVarInt($L, $L)", "getVarInt($L)", "getVarInt($L, $L)", FieldCodec.skipVarInt(), Helper.VarInt));
+      case LONG:
+        return result(FieldCodec.of("putVarLong($L, $L)", "getVarLong($L)", "getVarLong($L, $L)", FieldCodec.skipVarInt(),
+            Helper.VarLong));
+      case FLOAT:
+        return result(FieldCodec.of("$L.putFloat($L)", "$L.getFloat()", "$L.getFloat($L)", FieldCodec.skipBytes(4)));
+      case DOUBLE:
+        return result(FieldCodec.of("$L.putDouble($L)", "$L.getDouble()", "$L.getDouble($L)", FieldCodec.skipBytes(8)));
+      case DECLARED:
+        return declaredFieldCodec(da, (DeclaredType) da.type(), adt, deriveUtils);
+      default:
+        return unsupportedField(da, adt);
+    }
+  }
+
+  private static DeriveResult<FieldCodec> declaredFieldCodec(DataArgument da, DeclaredType type, AlgebraicDataType adt,
+      DeriveUtils deriveUtils) {
+
+    TypeElement element = (TypeElement) type.asElement();
+
+    if (deriveUtils.types().isSameType(type, deriveUtils.elements().getTypeElement(String.class.getName()).asType())) {
+      return result(FieldCodec.of("putUtf8($L, $L)", "getUtf8($L)", "getUtf8($L, $L)",
+          index -> CodeBlock.of("skipVarInt($1L, $2L) + getVarInt($1L, $2L)", BUFFER, index), Helper.Utf8, Helper.VarInt));
+    }
+    if (element.getKind() == ElementKind.ENUM) {
+      FieldSpec values = enumValuesField(element);
+      return result(new FieldCodec(value -> CodeBlock.of("putVarInt($L, $L.ordinal())", BUFFER, value),
+          CodeBlock.of("$N[getVarInt($L)]", values, BUFFER), index -> CodeBlock.of("$N[getVarInt($L, $L)]", values, BUFFER, index),
+          FieldCodec.skipVarInt(), true, false, EnumSet.of(Helper.VarInt), Optional.of(values)));
+    }
+    if (deriveUtils.types().isSameType(type, adt.typeConstructor().declaredType())) {
+      return result(new FieldCodec(value -> CodeBlock.of("encode($L, $L)", value, BUFFER), CodeBlock.of("decode($L)", BUFFER),
+          index -> CodeBlock.of("lazyNode($L, $L)", BUFFER, index), null, false, true, EnumSet.noneOf(Helper.class), Optional.empty()));
+    }
+
+    Data nestedData = element.getAnnotation(Data.class);
+    if (nestedData == null || !type.getTypeArguments().isEmpty()) {
+      return unsupportedField(da, adt);
+    }
+    if (!BuiltinDerivator.makeWithDpendencies(nestedData.value().make()).contains(Make.codec)) {
+      return error(message("Field '" + da.fieldName() + "': " + element.getSimpleName() + " must also derive a codec",
+          onElement(adt.typeConstructor().typeElement())));
+    }
+
+    ClassName nestedDerivedClass = ClassName.get(Utils.getPackage.visit(element).getQualifiedName().toString(),
+        DerivingProcessor.deduceDerivedClassName(nestedData.value(), element));
+
+    Set<TypeElement> path = new HashSet<>();
+    path.add(adt.typeConstructor().typeElement());
+
+    return result(new FieldCodec(value -> CodeBlock.of("$T.encode($L, $L)", nestedDerivedClass, value, BUFFER),
+        CodeBlock.of("$T.decode($L)", nestedDerivedClass, BUFFER), index -> CodeBlock.of("$T.view($L, $L)", nestedDerivedClass, BUFFER, index),
+        index -> CodeBlock.of("$T.skip($L, $L)", nestedDerivedClass, BUFFER, index), hasView(element, deriveUtils, path),
+        false, EnumSet.noneOf(Helper.class), Optional.empty()));
+  }
+
+  /**
+   * Whether view(buffer, offset) is derived for the given data type: it must derive a codec, and neither it nor the data types of its
+   * fields (transitively) can be recursive.
+   */
+  public static boolean hasView(TypeElement element, DeriveUtils deriveUtils) {
+
+    return hasView(element, deriveUtils, new HashSet<>());
+  }
+
+  private static boolean hasView(TypeElement element, DeriveUtils deriveUtils, Set<TypeElement> path) {
+
+    Data data = element.getAnnotation(Data.class);
+    if (data == null || !BuiltinDerivator.makeWithDpendencies(data.value().make()).contains(Make.codec) || !path.add(element)) {
+      return false;
+    }
+    boolean hasView = element.getKind() == ElementKind.ENUM || deriveUtils.parseAlgebraicDataType(element)
+        .match(error -> false, adt -> adt.typeConstructor().typeVariables().isEmpty() && adt.dataConstruction()
+            .constructors()
+            .stream()
+            .flatMap(dc -> dc.arguments().stream())
+            .allMatch(da -> da.type().getKind().isPrimitive() || Utils.asDeclaredType.visit(da.type())
+                .filter(type -> type.getTypeArguments().isEmpty())
+                .map(type -> (TypeElement) type.asElement())
+                .map(fieldElement -> fieldElement.getKind() == ElementKind.ENUM ||
+                    fieldElement.getQualifiedName().contentEquals(String.class.getName()) ||
+                    hasView(fieldElement, deriveUtils, path))
+                .orElse(false)));
+    path.remove(element);
+    return hasView;
+  }
+
+  private static DeriveResult<FieldCodec> unsupportedField(DataArgument da, AlgebraicDataType adt) {
+
+    return error(message("Field '" + da.fieldName() + "' of type " + da.type() +
+        " is not supported by the codec (supported: primitives, String, enums and data types deriving a codec)",
+        onElement(adt.typeConstructor().typeElement())));
+  }
+
+  private static FieldSpec enumValuesField(TypeElement enumElement) {
+
+    ClassName enumClass = ClassName.get(enumElement);
+    return FieldSpec.builder(ArrayTypeName.of(enumClass), Utils.uncapitalize(enumElement.getSimpleName()) + "Values", Modifier.PRIVATE,
+        Modifier.STATIC, Modifier.FINAL).initializer("$T.values()", enumClass).build();
+  }
+
+  private static List<MethodSpec> helperMethods(Set<Helper> helpers, boolean absolute) {
+
+    List<MethodSpec> methods = new ArrayList<>();
+    if (helpers.contains(Helper.VarInt)) {
+      methods.add(MethodSpec.methodBuilder("putVarInt")
+          .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+          .addParameter(ByteBuffer.class, BUFFER)
+          .addParameter(TypeName.INT, "value")
+          .addStatement("int bits = (value << 1) ^ (value >> 31)")
+          .beginControlFlow("while ((bits & ~0x7F) != 0)")
+          .addStatement("$L.put((byte) ((bits & 0x7F) | 0x80))", BUFFER)
+          .addStatement("bits >>>= 7")
+          .endControlFlow()
+          .addStatement("$L.put((byte) bits)", BUFFER)
+          .build());
+      methods.add(getVarIntMethod("getVarInt", TypeName.INT, false));
+      if (absolute) {
+        methods.add(getVarIntMethod("getVarInt", TypeName.INT, true));
+      }
+    }
+    if (helpers.contains(Helper.VarLong)) {
+      methods.add(MethodSpec.methodBuilder("putVarLong")
+          .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+          .addParameter(ByteBuffer.class, BUFFER)
+          .addParameter(TypeName.LONG, "value")
+          .addStatement("long bits = (value << 1) ^ (value >> 63)")
+          .beginControlFlow("while ((bits & ~0x7FL) != 0)")
+          .addStatement("$L.put((byte) ((bits & 0x7F) | 0x80))", BUFFER)
+          .addStatement("bits >>>= 7")
+          .endControlFlow()
+          .addStatement("$L.put((byte) bits)", BUFFER)
+          .build());
+      methods.add(getVarIntMethod("getVarLong", TypeName.LONG, false));
+      if (absolute) {
+        methods.add(getVarIntMethod("getVarLong", TypeName.LONG, true));
+      }
+    }
+    if (absolute && (helpers.contains(Helper.VarInt) || helpers.contains(Helper.VarLong))) {
+      methods.add(MethodSpec.methodBuilder("skipVarInt")
+          .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+          .addParameter(ByteBuffer.class, BUFFER)
+          .addParameter(TypeName.INT, INDEX)
+          .returns(TypeName.INT)
+          .beginControlFlow("while ($L.get($L) < 0)", BUFFER, INDEX)
+          .addStatement("$L++", INDEX)
+          .endControlFlow()
+          .addStatement("return $L + 1", INDEX)
+          .build());
+    }
+    if (helpers.contains(Helper.Utf8)) {
+      // encoded straight into the buffer (unpaired surrogates are written as '?', as String.getBytes(UTF_8) does):
+      methods.add(MethodSpec.methodBuilder("putUtf8")
+          .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+          .addParameter(ByteBuffer.class, BUFFER)
+          .addParameter(String.class, "value")
+          .addStatement("int length = value.length()")
+          .addStatement("int utf8Length = 0")
+          .beginControlFlow("for (int i = 0; i < length; i++)")
+          .addStatement("char c = value.charAt(i)")
+          .beginControlFlow("if (c < 0x80)")
+          .addStatement("utf8Length += 1")
+          .nextControlFlow("else if (c < 0x800)")
+          .addStatement("utf8Length += 2")
+          .nextControlFlow("else if ($1T.isHighSurrogate(c) && i + 1 < length && $1T.isLowSurrogate(value.charAt(i + 1)))",
+              Character.class)
+          .addStatement("utf8Length += 4")
+          .addStatement("i++")
+          .nextControlFlow("else if ($T.isSurrogate(c))", Character.class)
+          .addStatement("utf8Length += 1")
+          .nextControlFlow("else")
+          .addStatement("utf8Length += 3")
+          .endControlFlow()
+          .endControlFlow()
+          .addStatement("putVarInt($L, utf8Length)", BUFFER)
+          .beginControlFlow("for (int i = 0; i < length; i++)")
+          .addStatement("char c = value.charAt(i)")
+          .beginControlFlow("if (c < 0x80)")
+          .addStatement("$L.put((byte) c)", BUFFER)
+          .nextControlFlow("else if (c < 0x800)")
+          .addStatement("$L.put((byte) (0xC0 | (c >> 6)))", BUFFER)
+          .addStatement("$L.put((byte) (0x80 | (c & 0x3F)))", BUFFER)
+          .nextControlFlow("else if ($1T.isHighSurrogate(c) && i + 1 < length && $1T.isLowSurrogate(value.charAt(i + 1)))",
+              Character.class)
+          .addStatement("int codePoint = $T.toCodePoint(c, value.charAt(++i))", Character.class)
+          .addStatement("$L.put((byte) (0xF0 | (codePoint >> 18)))", BUFFER)
+          .addStatement("$L.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)))", BUFFER)
+          .addStatement("$L.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)))", BUFFER)
+          .addStatement("$L.put((byte) (0x80 | (codePoint & 0x3F)))", BUFFER)
+          .nextControlFlow("else if ($T.isSurrogate(c))", Character.class)
+          .addStatement("$L.put((byte) '?')", BUFFER)
+          .nextControlFlow("else")
+          .addStatement("$L.put((byte) (0xE0 | (c >> 12)))", BUFFER)
+          .addStatement("$L.put((byte) (0x80 | ((c >> 6) & 0x3F)))", BUFFER)
+          .addStatement("$L.put((byte) (0x80 | (c & 0x3F)))", BUFFER)
+          .endControlFlow()
+          .endControlFlow()
+          .build());
+      // heap buffers are decoded in place, others copied once:
+      methods.add(MethodSpec.methodBuilder("getUtf8")
+          .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+          .addParameter(ByteBuffer.class, BUFFER)
+          .returns(String.class)
+          .addStatement("int length = getVarInt($L)", BUFFER)
+          .beginControlFlow("if (length < 0 || length > $L.remaining())", BUFFER)
+          .addStatement("throw new $T()", BufferUnderflowException.class)
+          .endControlFlow()
+          .beginControlFlow("if ($L.hasArray())", BUFFER)
+          .addStatement("$T value = new $T($L.array(), $L.arrayOffset() + $L.position(), length, $T.UTF_8)", String.class, String.class,
+              BUFFER, BUFFER, BUFFER, StandardCharsets.class)
+          .addStatement("$L.position($L.position() + length)", BUFFER, BUFFER)
+          .addStatement("return value")
+          .endControlFlow()
+          .addStatement("byte[] bytes = new byte[length]")
+          .addStatement("$L.get(bytes)", BUFFER)
+          .addStatement("return new $T(bytes, $T.UTF_8)", String.class, StandardCharsets.class)
+          .build());
+      if (absolute) {
+        methods.add(MethodSpec.methodBuilder("getUtf8")
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .addParameter(ByteBuffer.class, BUFFER)
+            .addParameter(TypeName.INT, INDEX)
+            .returns(String.class)
+            .addStatement("int length = getVarInt($L, $L)", BUFFER, INDEX)
+            .addStatement("int start = skipVarInt($L, $L)", BUFFER, INDEX)
+            .beginControlFlow("if (length < 0 || length > $L.limit() - start)", BUFFER)
+            .addStatement("throw new $T()", IndexOutOfBoundsException.class)
+            .endControlFlow()
+            .beginControlFlow("if ($L.hasArray())", BUFFER)
+            .addStatement("return new $T($L.array(), $L.arrayOffset() + start, length, $T.UTF_8)", String.class, BUFFER, BUFFER,
+                StandardCharsets.class)
+            .endControlFlow()
+            .addStatement("byte[] bytes = new byte[length]")
+            .beginControlFlow("for (int i = 0; i < length; i++)")
+            .addStatement("bytes[i] = $L.get(start + i)", BUFFER)
+            .endControlFlow()
+            .addStatement("return new $T(bytes, $T.UTF_8)", String.class, StandardCharsets.class)
+            .build());
+      }
+    }
+    return methods;
+  }
+
+  /**
+   * Zig-zag varint decoding, either relative (advancing the position of the buffer) or absolute (at the given index).
+   */
+  private static MethodSpec getVarIntMethod(String name, TypeName type, boolean absolute) {
+
+    boolean isLong = type.equals(TypeName.LONG);
+    MethodSpec.Builder getVarInt = MethodSpec.methodBuilder(name)
+        .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+        .addParameter(ByteBuffer.class, BUFFER);
+    if (absolute) {
+      getVarInt.addParameter(TypeName.INT, INDEX);
+    }
+    return getVarInt.returns(type)
+        .addStatement("$T bits = 0", type)
+        .beginControlFlow("for (int shift = 0; shift < $L; shift += 7)", isLong
+                                                                        ? 70
+                                                                        : 35)
+        .addStatement("byte b = $L", absolute
+                                     ? CodeBlock.of("$L.get($L++)", BUFFER, INDEX)
+                                     : CodeBlock.of("$L.get()", BUFFER))
+        .addStatement(isLong
+                      ? "bits |= (long) (b & 0x7F) << shift"
+                      : "bits |= (b & 0x7F) << shift")
+        .beginControlFlow("if (b >= 0)")
+        .addStatement("return (bits >>> 1) ^ -(bits & 1)")
+        .endControlFlow()
+        .endControlFlow()
+        .addStatement("throw new $T($S)", IllegalArgumentException.class, "Malformed varint")
+        .build();
+  }
+
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2015, Jean-Baptiste Giraudeau <jb@giraudeau.info>
+ *
+ * This file is part of "Derive4J - Annotation Processor".
+ *
+ * "Derive4J - Annotation Processor" is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * "Derive4J - Annotation Processor" is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with "Derive4J - Annotation Processor".  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.derive4j.processor.derivator;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.NameAllocator;
+import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import org.derive4j.Make;
+import org.derive4j.Visibility;
+import org.derive4j.processor.Utils;
+import org.derive4j.processor.api.DeriveUtils;
+import org.derive4j.processor.api.DerivedCodeSpec;
+import org.derive4j.processor.api.model.AlgebraicDataType;
+import org.derive4j.processor.api.model.DataConstructor;
+import org.derive4j.processor.api.model.DeriveContext;
+
+/**
+ * Derives constructorTag, the index of the constructor of a value (in the order of the visitor methods, or of the match method
+ * arguments), so that code can switch on the constructor of a value. Instances built by the derived constructors (and lazy ones)
+ * implement the private Tagged interface, whose constructorTag method returns the tag as a constant, without going through the
+ * (megamorphic) match method, which is only used for other instances. For enums the tag is read from a table indexed by the ordinal.
+ * Also derives dispatch, a match through a switch on the tag of instances built by the derived constructors.
+ */
+public final class ConstructorTagDerivator {
+
+  private static final String TAGGED = "Tagged";
+
+  public static DerivedCodeSpec derive(AlgebraicDataType adt, DeriveContext deriveContext, DeriveUtils deriveUtils) {
+
+    List<DataConstructor> constructors = adt.dataConstruction().constructors();
+    if (constructors.isEmpty()) {
+      return DerivedCodeSpec.none();
+    }
+
+    List<TypeVariableName> typeVariableNames = adt.typeConstructor().typeVariables().stream().map(TypeVariableName::get).collect(
+        Collectors.toList());
+    String adtVar = Utils.uncapitalize(adt.typeConstructor().typeElement().getSimpleName());
+    NameAllocator nameAllocator = new NameAllocator();
+    nameAllocator.newName(adtVar, "adt var");
+
+    MethodSpec.Builder tagMethod = MethodSpec.methodBuilder(constructorTagMethodName())
+        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+        .addTypeVariables(typeVariableNames)
+        .addParameter(TypeName.get(adt.typeConstructor().declaredType()), adtVar)
+        .returns(TypeName.INT);
+
+    List<MethodSpec> dispatch = Collections.emptyList();
+    if (hasTaggedImplementations(adt, deriveContext)) {
+      // negative tags are those of lazy values evaluated to other instances:
+      tagMethod.beginControlFlow("if ($L instanceof $L)", adtVar, TAGGED)
+          .addStatement("int tag = (($L) $L).$L()", TAGGED, adtVar, constructorTagMethodName())
+          .beginControlFlow("if (tag >= 0)")
+          .addStatement("return tag")
+          .endControlFlow()
+          .endControlFlow();
+      if (constructors.stream().allMatch(dc -> dc.typeRestrictions().isEmpty())) {
+        dispatch = Collections.singletonList(dispatchMethod(adt, deriveContext, deriveUtils));
+      }
+    }
+
+    // tags are small Integer constants, so that matching other instances does not allocate either:
+    CodeBlock tagLambdas = CodeBlock.builder()
+        .add(Utils.joinStringsAsArguments(constructors.stream()
+            .map(dc -> '(' + Utils.asLambdaParametersString(dc.arguments(), dc.typeRestrictions(), nameAllocator.clone()) + ") -> " +
+                constructors.indexOf(dc))))
+        .build();
+
+    if (isEnum(adt)) {
+      return enumConstructorTags(adt, deriveContext, deriveUtils, tagMethod, adtVar, tagLambdas);
+    }
+
+    if (!adt.dataConstruction().isVisitorDispatch()) {
+      return DerivedCodeSpec.methodSpec(tagMethod.addStatement("return $L.<$T>$L($L)", adtVar, TypeName.INT.box(),
+          adt.matchMethod().element().getSimpleName(), tagLambdas).build()).append(DerivedCodeSpec.methodSpecs(dispatch));
+    }
+
+    DeclaredType visitorType = (DeclaredType) adt.matchMethod().element().getParameters().get(0).asType();
+    TypeMirror integerType = deriveUtils.elements().getTypeElement(Integer.class.getName()).asType();
+    FieldSpec tagVisitor = FieldSpec.builder(TypeName.get(deriveUtils.resolve(deriveUtils.resolve(visitorType,
+        tv -> deriveUtils.types().isSameType(tv, adt.matchMethod().returnTypeVariable())
+              ? Optional.of(integerType)
+              : Optional.empty()), tv -> Optional.of(deriveUtils.elements().getTypeElement(Object.class.getName()).asType()))),
+        constructorTagMethodName() + "Visitor")
+        .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+        .initializer("$T.$L($L)", ClassName.get(deriveContext.targetPackage(), deriveContext.targetClassName()),
+            MapperDerivator.visitorLambdaFactoryName(adt), tagLambdas)
+        .build();
+
+    if (typeVariableNames.isEmpty()) {
+      tagMethod.addStatement("return $L.$L($N)", adtVar, adt.matchMethod().element().getSimpleName(), tagVisitor);
+    } else {
+      tagMethod.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "{$S, $S}", "unchecked", "rawtypes").build())
+          .addStatement("return ($T) $L.$L(($T) $N)", TypeName.INT.box(), adtVar, adt.matchMethod().element().getSimpleName(),
+              TypeName.get(deriveUtils.types().erasure(visitorType)), tagVisitor);
+    }
+
+    return DerivedCodeSpec.codeSpec(tagVisitor, tagMethod.build()).append(DerivedCodeSpec.methodSpecs(dispatch));
+  }
+
+  /**
+   * Same as the match method, but instances built by the derived constructors are matched by a (table) switch on their tag, followed
+   * by a call of the case with their fields: no virtual call of the match method. Only for data types without type restrictions, as
+   * their constructor classes keep all the type variables.
+   */
+  private static MethodSpec dispatchMethod(AlgebraicDataType adt, DeriveContext deriveContext, DeriveUtils deriveUtils) {
+
+    ExecutableElement matchMethod = adt.matchMethod().element();
+    List<TypeVariableName> typeVariableNames = adt.typeConstructor().typeVariables().stream().map(TypeVariableName::get).collect(
+        Collectors.toList());
+    NameAllocator nameAllocator = new NameAllocator();
+    matchMethod.getParameters().forEach(p -> nameAllocator.newName(p.getSimpleName().toString(), p));
+    String adtVar = nameAllocator.newName(Utils.uncapitalize(adt.typeConstructor().typeElement().getSimpleName()), "adt var");
+    String matchArgs = Utils.joinStringsAsArguments(matchMethod.getParameters().stream().map(p -> p.getSimpleName().toString()));
+
+    MethodSpec.Builder dispatch = MethodSpec.methodBuilder(dispatchMethodName())
+        .addModifiers(Modifier.STATIC)
+        .addTypeVariables(typeVariableNames)
+        .addTypeVariables(matchMethod.getTypeParameters().stream().map(TypeVariableName::get).collect(Collectors.toList()))
+        .addParameter(TypeName.get(adt.typeConstructor().declaredType()), adtVar)
+        .addParameters(matchMethod.getParameters()
+            .stream()
+            .map(p -> ParameterSpec.builder(TypeName.get(p.asType()), p.getSimpleName().toString()).build())
+            .collect(Collectors.toList()))
+        .returns(TypeName.get(matchMethod.getReturnType()));
+    if (!typeVariableNames.isEmpty()) {
+      dispatch.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build());
+    }
+    if (deriveContext.visibility() != Visibility.Smart) {
+      dispatch.addModifiers(Modifier.PUBLIC);
+    }
+
+    if (deriveContext.makes().contains(Make.lazyConstructor)) {
+      ClassName lazyClassName = Utils.getClassName(deriveContext, "Lazy");
+      dispatch.beginControlFlow("if ($L instanceof $T)", adtVar, lazyClassName)
+          .addStatement("$L = (($T) $L).eval()", adtVar, parameterized(lazyClassName, typeVariableNames), adtVar)
+          .endControlFlow();
+    }
+    dispatch.beginControlFlow("if ($L instanceof $L)", adtVar, TAGGED).beginControlFlow("switch ((($L) $L).$L())", TAGGED, adtVar,
+        constructorTagMethodName());
+    String implVar = nameAllocator.newName("impl", "impl var");
+    List<DataConstructor> constructors = adt.dataConstruction().constructors();
+    for (int i = 0; i < constructors.size(); i++) {
+      DataConstructor dc = constructors.get(i);
+      dispatch.beginControlFlow("case $L:", i);
+      if (!dc.arguments().isEmpty()) {
+        dispatch.addStatement("$1T $2L = ($1T) $3L", parameterized(
+            Utils.getClassName(deriveContext, StrictConstructorDerivator.implClassName(adt, dc, deriveUtils)), typeVariableNames), implVar,
+            adtVar);
+      }
+      dispatch.addStatement("return $L.$L($L)", dc.deconstructor().visitorParam().getSimpleName(),
+          dc.deconstructor().visitorMethod().getSimpleName(),
+          Utils.joinStringsAsArguments(dc.arguments().stream().map(da -> implVar + '.' + da.fieldName()))).endControlFlow();
+    }
+    return dispatch.endControlFlow()
+        .endControlFlow()
+        .addStatement("return $L.$L($L)", adtVar, matchMethod.getSimpleName(), matchArgs)
+        .build();
+  }
+
+  /**
+   * The private interface of the classes of the derived constructors (and of lazy values), if any.
+   */
+  static boolean hasTaggedImplementations(AlgebraicDataType adt, DeriveContext deriveContext) {
+
+    return deriveContext.makes().contains(Make.constructors) && !isEnum(adt) && !adt.dataConstruction().constructors().isEmpty();
+  }
+
+  static ClassName taggedClassName(DeriveContext deriveContext) {
+
+    return Utils.getClassName(deriveContext, TAGGED);
+  }
+
+  static TypeSpec taggedInterface() {
+
+    return TypeSpec.interfaceBuilder(TAGGED)
+        .addModifiers(Modifier.PRIVATE)
+        .addMethod(MethodSpec.methodBuilder(constructorTagMethodName())
+            .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+            .returns(TypeName.INT)
+            .build())
+        .build();
+  }
+
+  static MethodSpec.Builder taggedMethodBuilder() {
+
+    return MethodSpec.methodBuilder(constructorTagMethodName())
+        .addAnnotation(Override.class)
+        .addModifiers(Modifier.PUBLIC)
+        .returns(TypeName.INT);
+  }
+
+  private static TypeName parameterized(ClassName className, List<TypeVariableName> typeVariableNames) {
+
+    return typeVariableNames.isEmpty()
+           ? className
+           : ParameterizedTypeName.get(className, typeVariableNames.toArray(new TypeName[0]));
+  }
+
+  /**
+   * The constructor of each enum constant is found once, by matching it, and stored in a table indexed by the ordinal of the constant.
+   */
+  private static DerivedCodeSpec enumConstructorTags(AlgebraicDataType adt, DeriveContext deriveContext, DeriveUtils deriveUtils,
+      MethodSpec.Builder tagMethod, String adtVar, CodeBlock tagLambdas) {
+
+    TypeName adtTypeName = TypeName.get(adt.typeConstructor().declaredType());
+    String tableName = constructorTagMethodName() + "s";
+
+    CodeBlock.Builder tableInitializer = CodeBlock.builder()
+        .addStatement("$T[] values = $T.values()", adtTypeName, adtTypeName)
+        .addStatement("int[] tags = new int[values.length]");
+    if (adt.dataConstruction().isVisitorDispatch()) {
+      DeclaredType visitorType = (DeclaredType) adt.matchMethod().element().getParameters().get(0).asType();
+      TypeMirror integerType = deriveUtils.elements().getTypeElement(Integer.class.getName()).asType();
+      tableInitializer.addStatement("$T visitor = $T.$L($L)", TypeName.get(deriveUtils.resolve(visitorType,
+          tv -> Optional.of(integerType))), ClassName.get(deriveContext.targetPackage(), deriveContext.targetClassName()),
+          MapperDerivator.visitorLambdaFactoryName(adt), tagLambdas)
+          .beginControlFlow("for ($T value : values)", adtTypeName)
+          .addStatement("tags[value.ordinal()] = value.$L(visitor)", adt.matchMethod().element().getSimpleName());
+    } else {
+      tableInitializer.beginControlFlow("for ($T value : values)", adtTypeName)
+          .addStatement("tags[value.ordinal()] = value.<$T>$L($L)", TypeName.INT.box(), adt.matchMethod().element().getSimpleName(),
+              tagLambdas);
+    }
+
+    FieldSpec table = FieldSpec.builder(int[].class, tableName, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+        .initializer("$L()", tableName)
+        .build();
+
+    MethodSpec tableFactory = MethodSpec.methodBuilder(tableName)
+        .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+        .returns(int[].class)
+        .addCode(tableInitializer.endControlFlow().addStatement("return tags").build())
+        .build();
+
+    return DerivedCodeSpec.codeSpec(Collections.emptyList(), Collections.singletonList(table),
+        Arrays.asList(tagMethod.addStatement("return $N[$L.ordinal()]", table, adtVar).build(), tableFactory), Collections.emptyList(),
+        Collections.emptyList());
+  }
+
+  public static boolean isEnum(AlgebraicDataType adt) {
+
+    return adt.typeConstructor().declaredType().asElement().getKind() == ElementKind.ENUM;
+  }
+
+  public static String constructorTagMethodName() {
+
+    return "constructorTag";
+  }
+
+  public static String dispatchMethodName() {
+
+    return "dispatch";
+  }
+
+}
@@ -24,17 +24,26 @@ import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.NameAllocator;
+import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeVariableName;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.DoubleSupplier;
 import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.type.TypeVariable;
+import org.derive4j.Make;
 import org.derive4j.processor.Utils;
 import org.derive4j.processor.api.DeriveResult;
 import org.derive4j.processor.api.DeriveUtils;
@@ -62,7 +71,132 @@ public final class GettersDerivator {
 
     return isLens(field, adt.dataConstruction().constructors())
            ? generateLensGetter(field, adt, deriveUtils, deriveContext)
-           : generateOptionalGetter(field, adt, deriveContext, deriveUtils);
+           : generateOptionalGetter(field, adt, deriveContext, deriveUtils).append(generatePartialGetters(field, adt, deriveContext, deriveUtils));
+  }
+
+  /**
+   * Allocation free alternatives to the optional getter: getXOrNull and getXOrElse(default) for reference fields, getXOrElse(default) for
+   * primitive fields (plus getXOrElse(supplier) for int, long and double fields). Instances that were not built by the derived
+   * constructors are matched with a visitor returning null for constructors without the field.
+   */
+  private static DerivedCodeSpec generatePartialGetters(DataArgument field, AlgebraicDataType adt, DeriveContext deriveContext,
+      DeriveUtils deriveUtils) {
+
+    String arg = asParameterName(adt);
+    String capitalizedFieldName = Utils.capitalize(field.fieldName());
+    TypeName fieldTypeName = TypeName.get(field.type());
+    TypeMirror boxedFieldType = field.type().accept(Utils.asBoxedType, deriveUtils.types());
+    boolean primitive = field.type().getKind().isPrimitive();
+
+    NameAllocator nameAllocator = new NameAllocator();
+    nameAllocator.newName(arg);
+    String defaultArg = nameAllocator.newName("default" + capitalizedFieldName);
+    String valueVar = nameAllocator.newName(field.fieldName());
+
+    CodeBlock nullableLambdas = getterLambdas(nameAllocator, adt.dataConstruction().constructors(), field,
+        fieldValue -> CodeBlock.of("$L", fieldValue.orElse("null")));
+
+    // match(...) expression returning the (boxed) field value or null, and the possible static visitor it uses:
+    CodeBlock nullableMatch;
+    List<FieldSpec> visitorFields;
+    boolean rawMatch = adt.dataConstruction().isVisitorDispatch() && !adt.typeConstructor().typeVariables().isEmpty();
+    if (adt.dataConstruction().isVisitorDispatch()) {
+      DeclaredType visitorType = (DeclaredType) adt.matchMethod().element().getParameters().get(0).asType();
+      FieldSpec visitorField = FieldSpec.builder(TypeName.get(deriveUtils.resolve(deriveUtils.resolve(visitorType,
+          tv -> deriveUtils.types().isSameType(tv, adt.matchMethod().returnTypeVariable())
+                ? Optional.of(boxedFieldType)
+                : Optional.empty()), tv -> Optional.of(deriveUtils.elements().getTypeElement(Object.class.getName()).asType()))),
+          Utils.uncapitalize(field.fieldName() + "OrNullGetter"))
+          .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+          .initializer("$T.$L($L)", ClassName.get(deriveContext.targetPackage(), deriveContext.targetClassName()),
+              MapperDerivator.visitorLambdaFactoryName(adt), nullableLambdas)
+          .build();
+      visitorFields = Collections.singletonList(visitorField);
+      if (!rawMatch) {
+        nullableMatch = CodeBlock.of("$L.$L($N)", arg, adt.matchMethod().element().getSimpleName(), visitorField);
+      } else {
+        nullableMatch = CodeBlock.of("($T) $L.$L(($T) $N)", TypeName.get(boxedFieldType), arg, adt.matchMethod().element().getSimpleName(),
+            TypeName.get(deriveUtils.types().erasure(visitorType)), visitorField);
+      }
+    } else {
+      visitorFields = Collections.emptyList();
+      nullableMatch = CodeBlock.of("$L.<$T>$L($L)", arg, TypeName.get(boxedFieldType), adt.matchMethod().element().getSimpleName(),
+          nullableLambdas);
+    }
+
+    List<MethodSpec> getters = new ArrayList<>();
+    AnnotationSpec uncheckedAnnotation = AnnotationSpec.builder(SuppressWarnings.class)
+        .addMember("value", "{$S, $S}", "unchecked", "rawtypes")
+        .build();
+
+    if (!primitive) {
+      MethodSpec.Builder orNull = partialGetterBuilder(adt, arg, "get" + capitalizedFieldName + "OrNull", fieldTypeName).addCode(
+          directFieldReads(adt, arg, field, fieldRead -> fieldRead.orElse(CodeBlock.of("null")), deriveContext, deriveUtils))
+          .addStatement("return $L", nullableMatch);
+      if (rawMatch) {
+        orNull.addAnnotation(uncheckedAnnotation);
+      }
+      getters.add(orNull.build());
+    }
+
+    // a null reference field is defaulted the same way whether it is read directly or through the visitor:
+    getters.add(partialGetterBuilder(adt, arg, "get" + capitalizedFieldName + "OrElse", fieldTypeName).addParameter(fieldTypeName, defaultArg)
+        .addCode(primitive
+                 ? directFieldReads(adt, arg, field, fieldRead -> fieldRead.orElse(CodeBlock.of("$L", defaultArg)), deriveContext, deriveUtils)
+                 : directFieldReadStatements(adt, arg, field, fieldRead -> fieldRead.map(read -> CodeBlock.builder()
+                     .addStatement("$T $L = $L", fieldTypeName, valueVar, read)
+                     .addStatement("return $1L == null ? $2L : $1L", valueVar, defaultArg)
+                     .build()).orElse(CodeBlock.builder().addStatement("return $L", defaultArg).build()), deriveContext, deriveUtils))
+        .addStatement("$T $L = $L", TypeName.get(boxedFieldType), valueVar, primitive
+                                                                         ? nullableMatch
+                                                                         : CodeBlock.of("get$LOrNull($L)", capitalizedFieldName, arg))
+        .addStatement("return $1L == null ? $2L : $1L", valueVar, defaultArg)
+        .addAnnotations(rawMatch && primitive
+                        ? Collections.singletonList(uncheckedAnnotation)
+                        : Collections.emptyList())
+        .build());
+
+    primitiveSupplier(field.type().getKind()).ifPresent(supplier -> {
+      String supplierGet = deriveUtils.allAbstractMethods(deriveUtils.elements().getTypeElement(supplier.getName()))
+          .get(0)
+          .getSimpleName()
+          .toString();
+      getters.add(partialGetterBuilder(adt, arg, "get" + capitalizedFieldName + "OrElse", fieldTypeName).addParameter(ClassName.get(supplier),
+          defaultArg)
+          .addCode(directFieldReads(adt, arg, field, fieldRead -> fieldRead.orElse(CodeBlock.of("$L.$L()", defaultArg, supplierGet)),
+              deriveContext, deriveUtils))
+          .addStatement("$T $L = $L", TypeName.get(boxedFieldType), valueVar, nullableMatch)
+          .addStatement("return $1L == null ? $2L.$3L() : $1L", valueVar, defaultArg, supplierGet)
+          .addAnnotations(rawMatch
+                          ? Collections.singletonList(uncheckedAnnotation)
+                          : Collections.emptyList())
+          .build());
+    });
+
+    return DerivedCodeSpec.codeSpec(Collections.emptyList(), visitorFields, getters, Collections.emptyList(), Collections.emptyList());
+  }
+
+  private static MethodSpec.Builder partialGetterBuilder(AlgebraicDataType adt, String arg, String name, TypeName returnType) {
+
+    return MethodSpec.methodBuilder(name)
+        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+        .addTypeVariables(adt.typeConstructor().typeVariables().stream().map(TypeVariableName::get).collect(Collectors.toList()))
+        .addParameter(TypeName.get(adt.typeConstructor().declaredType()), arg)
+        .returns(returnType);
+  }
+
+  private static Optional<Class<?>> primitiveSupplier(TypeKind kind) {
+
+    switch (kind) {
+      case INT:
+        return Optional.of(IntSupplier.class);
+      case LONG:
+        return Optional.of(LongSupplier.class);
+      case DOUBLE:
+        return Optional.of(DoubleSupplier.class);
+      default:
+        return Optional.empty();
+    }
   }
 
   private static DerivedCodeSpec generateOptionalGetter(DataArgument field, AlgebraicDataType adt, DeriveContext deriveContext,
@@ -75,20 +209,26 @@ public final class GettersDerivator {
     DeclaredType returnType = deriveUtils.types()
         .getDeclaredType(optionType.typeElement(), field.type().accept(Utils.asBoxedType, deriveUtils.types()));
 
+    CodeBlock fieldReads = directFieldReads(adt, arg, field, fieldRead -> fieldRead.map(
+        read -> CodeBlock.of("$T.$L($L)", ClassName.get(optionType.typeElement()), optionType.someConstructor(), read))
+        .orElseGet(() -> CodeBlock.of("$T.$L()", ClassName.get(optionType.typeElement()), optionType.noneConstructor())), deriveContext,
+        deriveUtils);
+
     return DataConstructions.cases()
         .multipleConstructors(MultipleConstructorsSupport.cases()
             .visitorDispatch(
                 (visitorParam, visitorType, constructors) -> visitorDispatchOptionalGetterImpl(deriveUtils, deriveContext, optionType, adt,
-                    visitorType, constructors, arg, field, returnType))
-            .functionsDispatch(constructors -> functionsDispatchOptionalGetterImpl(optionType, adt, arg, constructors, field, returnType)))
+                    visitorType, constructors, arg, field, returnType, fieldReads))
+            .functionsDispatch(
+                constructors -> functionsDispatchOptionalGetterImpl(optionType, adt, arg, constructors, field, returnType, fieldReads)))
         .otherwise(DerivedCodeSpec::none)
         .apply(adt.dataConstruction());
   }
 
   private static DerivedCodeSpec functionsDispatchOptionalGetterImpl(FlavourImpl.OptionType optionType, AlgebraicDataType adt, String arg,
-      List<DataConstructor> constructors, DataArgument field, DeclaredType returnType) {
+      List<DataConstructor> constructors, DataArgument field, DeclaredType returnType, CodeBlock fieldReads) {
 
-    return DerivedCodeSpec.methodSpec(getterBuilder(adt, arg, field, returnType).addCode(CodeBlock.builder()
+    return DerivedCodeSpec.methodSpec(getterBuilder(adt, arg, field, returnType, fieldReads).addCode(CodeBlock.builder()
         .add("return $L.$L(", arg, adt.matchMethod().element().getSimpleName())
         .add(optionalGetterLambdas(arg, optionType, constructors, field))
         .add(");")
@@ -97,7 +237,7 @@ public final class GettersDerivator {
 
   private static DerivedCodeSpec visitorDispatchOptionalGetterImpl(DeriveUtils deriveUtils, DeriveContext deriveContext,
       FlavourImpl.OptionType optionType, AlgebraicDataType adt, DeclaredType visitorType, List<DataConstructor> constructors, String arg,
-      DataArgument field, DeclaredType returnType) {
+      DataArgument field, DeclaredType returnType, CodeBlock fieldReads) {
 
     Function<TypeVariable, Optional<TypeMirror>> returnTypeArg = tv -> deriveUtils.types().isSameType(tv, adt.matchMethod().returnTypeVariable())
                                                                        ? Optional.of(returnType)
@@ -116,10 +256,10 @@ public final class GettersDerivator {
     MethodSpec getter;
 
     if (adt.typeConstructor().typeVariables().isEmpty()) {
-      getter = getterBuilder(adt, arg, field, returnType).addStatement("return $L.$L($L)", arg, adt.matchMethod().element().getSimpleName(),
+      getter = getterBuilder(adt, arg, field, returnType, fieldReads).addStatement("return $L.$L($L)", arg, adt.matchMethod().element().getSimpleName(),
           getterField.name).build();
     } else {
-      getter = getterBuilder(adt, arg, field, returnType).addAnnotation(
+      getter = getterBuilder(adt, arg, field, returnType, fieldReads).addAnnotation(
           AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "{$S, $S}", "unchecked", "rawtypes").build())
           .addStatement("return ($T) $L.$L(($T) $L)", TypeName.get(returnType), arg, adt.matchMethod().element().getSimpleName(),
               TypeName.get(deriveUtils.types().erasure(visitorType)), getterField.name)
@@ -130,13 +270,61 @@ public final class GettersDerivator {
     return DerivedCodeSpec.codeSpec(getterField, getter);
   }
 
-  private static MethodSpec.Builder getterBuilder(AlgebraicDataType adt, String arg, DataArgument field, TypeMirror type) {
+  private static MethodSpec.Builder getterBuilder(AlgebraicDataType adt, String arg, DataArgument field, TypeMirror type,
+      CodeBlock fieldReads) {
 
     return MethodSpec.methodBuilder("get" + Utils.capitalize(field.fieldName()))
         .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
         .addTypeVariables(adt.typeConstructor().typeVariables().stream().map(TypeVariableName::get).collect(Collectors.toList()))
         .addParameter(TypeName.get(adt.typeConstructor().declaredType()), arg)
-        .returns(TypeName.get(type));
+        .returns(TypeName.get(type))
+        .addCode(fieldReads);
+  }
+
+  /**
+   * Instances built by the derived constructors have their field read directly, without going through the (megamorphic) match
+   * method, which is only used for lazy instances and other subclasses.
+   *
+   * @param returnedValue the value returned given the read of the field, if the constructor has the field.
+   */
+  private static CodeBlock directFieldReads(AlgebraicDataType adt, String arg, DataArgument field,
+      Function<Optional<CodeBlock>, CodeBlock> returnedValue, DeriveContext deriveContext, DeriveUtils deriveUtils) {
+
+    return directFieldReadStatements(adt, arg, field,
+        fieldRead -> CodeBlock.builder().addStatement("return $L", returnedValue.apply(fieldRead)).build(), deriveContext, deriveUtils);
+  }
+
+  /**
+   * @param statements the statements (returning a value) given the read of the field, if the constructor has the field.
+   */
+  private static CodeBlock directFieldReadStatements(AlgebraicDataType adt, String arg, DataArgument field,
+      Function<Optional<CodeBlock>, CodeBlock> statements, DeriveContext deriveContext, DeriveUtils deriveUtils) {
+
+    CodeBlock.Builder fieldReads = CodeBlock.builder();
+
+    if (!deriveContext.makes().contains(Make.constructors) ||
+        (adt.typeConstructor().declaredType().asElement().getKind() == ElementKind.ENUM) ||
+        adt.dataConstruction().constructors().stream().anyMatch(dc -> !dc.typeRestrictions().isEmpty())) {
+      return fieldReads.build();
+    }
+
+    List<TypeName> typeVariableNames = adt.typeConstructor().typeVariables().stream().map(TypeVariableName::get).collect(Collectors.toList());
+
+    for (DataConstructor dc : adt.dataConstruction().constructors()) {
+      ClassName implClass = Utils.getClassName(deriveContext, StrictConstructorDerivator.implClassName(adt, dc, deriveUtils));
+      TypeName implTypeName = typeVariableNames.isEmpty()
+                              ? implClass
+                              : ParameterizedTypeName.get(implClass, typeVariableNames.toArray(new TypeName[0]));
+      Optional<CodeBlock> fieldRead = dc.arguments()
+          .stream()
+          .filter(da -> da.fieldName().equals(field.fieldName()))
+          .findFirst()
+          .map(da -> CodeBlock.of("(($T) $L).$L", implTypeName, arg, da.fieldName()));
+
+      fieldReads.beginControlFlow("if ($L instanceof $T)", arg, implClass).add(statements.apply(fieldRead)).endControlFlow();
+    }
+
+    return fieldReads.build();
   }
 
   private static CodeBlock optionalGetterLambdas(String arg, FlavourImpl.OptionType optionType, List<DataConstructor> constructors,
@@ -145,50 +333,62 @@ public final class GettersDerivator {
     NameAllocator nameAllocator = new NameAllocator();
     nameAllocator.newName(arg);
 
-    return constructors.stream().map(constructor -> {
-      CodeBlock.Builder caseImplBuilder = CodeBlock.builder()
-          .add("($L) -> $T.", joinStringsAsArguments(
-              Stream.concat(constructor.arguments().stream().map(DataArgument::fieldName).map(fn -> nameAllocator.clone().newName(fn, fn + " field")),
-                  constructor.typeRestrictions()
-                      .stream()
-                      .map(TypeRestriction::idFunction)
-                      .map(DataArgument::fieldName)
-                      .map(fn -> nameAllocator.clone().newName(fn, fn + " field")))), ClassName.get(optionType.typeElement()));
-      if (constructor.arguments().stream().anyMatch(da -> da.fieldName().equals(field.fieldName()))) {
-        caseImplBuilder.add("$L($L)", optionType.someConstructor(), nameAllocator.clone().newName(field.fieldName(), field.fieldName() + " field"));
-      } else {
-        caseImplBuilder.add("$L()", optionType.noneConstructor());
-      }
-      return caseImplBuilder.build();
-    }).reduce((cb1, cb2) -> CodeBlock.builder().add(cb1).add(",\n").add(cb2).build()).orElse(CodeBlock.builder().build());
+    return getterLambdas(nameAllocator, constructors, field, fieldValue -> fieldValue.map(
+        value -> CodeBlock.of("$T.$L($L)", ClassName.get(optionType.typeElement()), optionType.someConstructor(), value))
+        .orElseGet(() -> CodeBlock.of("$T.$L()", ClassName.get(optionType.typeElement()), optionType.noneConstructor())));
+  }
+
+  /**
+   * @param nameAllocator names the lambda parameters must not shadow.
+   * @param returnedValue the value returned by a case lambda, given the name of the field if the constructor has it.
+   */
+  private static CodeBlock getterLambdas(NameAllocator nameAllocator, List<DataConstructor> constructors, DataArgument field,
+      Function<Optional<String>, CodeBlock> returnedValue) {
+
+    return constructors.stream().map(constructor -> CodeBlock.builder()
+        .add("($L) -> $L", joinStringsAsArguments(
+            Stream.concat(constructor.arguments().stream().map(DataArgument::fieldName).map(fn -> nameAllocator.clone().newName(fn, fn + " field")),
+                constructor.typeRestrictions()
+                    .stream()
+                    .map(TypeRestriction::idFunction)
+                    .map(DataArgument::fieldName)
+                    .map(fn -> nameAllocator.clone().newName(fn, fn + " field")))), returnedValue.apply(
+            constructor.arguments().stream().anyMatch(da -> da.fieldName().equals(field.fieldName()))
+            ? Optional.of(nameAllocator.clone().newName(field.fieldName(), field.fieldName() + " field"))
+            : Optional.empty()))
+        .build()).reduce((cb1, cb2) -> CodeBlock.builder().add(cb1).add(",\n").add(cb2).build()).orElse(CodeBlock.builder().build());
   }
 
   private static DerivedCodeSpec generateLensGetter(DataArgument field, AlgebraicDataType adt, DeriveUtils deriveUtils, DeriveContext deriveContext) {
 
     String arg = asParameterName(adt);
 
+    CodeBlock fieldReads = directFieldReads(adt, arg, field, Optional::get, deriveContext, deriveUtils);
+
     return DataConstructions.cases()
         .multipleConstructors(MultipleConstructorsSupport.cases()
             .visitorDispatch(
-                (visitorParam, visitorType, constructors) -> visitorDispatchLensGetterImpl(deriveUtils, deriveContext, adt, arg, visitorType, field))
-            .functionsDispatch(constructors -> functionsDispatchLensGetterImpl(adt, arg, field)))
-        .oneConstructor(constructor -> functionsDispatchLensGetterImpl(adt, arg, field))
+                (visitorParam, visitorType, constructors) -> visitorDispatchLensGetterImpl(deriveUtils, deriveContext, adt, arg, visitorType, field,
+                    fieldReads))
+            .functionsDispatch(constructors -> functionsDispatchLensGetterImpl(adt, arg, field, fieldReads)))
+        .oneConstructor(constructor -> functionsDispatchLensGetterImpl(adt, arg, field, fieldReads))
         .noConstructor(DerivedCodeSpec::none)
         .apply(adt.dataConstruction());
   }
 
-  private static DerivedCodeSpec functionsDispatchLensGetterImpl(AlgebraicDataType adt, String arg, DataArgument field) {
+  private static DerivedCodeSpec functionsDispatchLensGetterImpl(AlgebraicDataType adt, String arg, DataArgument field,
+      CodeBlock fieldReads) {
 
     return DerivedCodeSpec.methodSpec(
-        getterBuilder(adt, arg, field, field.type()).addStatement("return $L.$L($L)", arg, adt.matchMethod().element().getSimpleName(),
+        getterBuilder(adt, arg, field, field.type(), fieldReads).addStatement("return $L.$L($L)", arg, adt.matchMethod().element().getSimpleName(),
             lensGetterLambda(arg, adt, field)).build());
   }
 
   private static DerivedCodeSpec visitorDispatchLensGetterImpl(DeriveUtils deriveUtils, DeriveContext deriveContext, AlgebraicDataType adt,
-      String arg, DeclaredType visitorType, DataArgument field) {
+      String arg, DeclaredType visitorType, DataArgument field, CodeBlock fieldReads) {
 
     Function<TypeVariable, Optional<TypeMirror>> returnTypeArg = tv -> deriveUtils.types().isSameType(tv, adt.matchMethod().returnTypeVariable())
-                                                                       ? Optional.of(field.type())
+                                                                       ? Optional.of(field.type().accept(Utils.asBoxedType, deriveUtils.types()))
                                                                        : Optional.empty();
 
     Function<TypeVariable, Optional<TypeMirror>> otherTypeArgs = tv -> Optional.of(
@@ -204,11 +404,11 @@ public final class GettersDerivator {
     final MethodSpec getter;
 
     if (adt.typeConstructor().typeVariables().isEmpty()) {
-      getter = getterBuilder(adt, arg, field, field.type()).addStatement("return $L.$L($L)", arg, adt.matchMethod().element().getSimpleName(),
+      getter = getterBuilder(adt, arg, field, field.type(), fieldReads).addStatement("return $L.$L($L)", arg, adt.matchMethod().element().getSimpleName(),
           getterField.name).build();
     } else {
 
-      getter = getterBuilder(adt, arg, field, field.type()).addAnnotation(
+      getter = getterBuilder(adt, arg, field, field.type(), fieldReads).addAnnotation(
           AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "{$S, $S}", "unchecked", "rawtypes").build())
           .addStatement("return ($T) $L.$L(($T) $L)", TypeName.get(field.type()), arg, adt.matchMethod().element().getSimpleName(),
               TypeName.get(deriveUtils.types().erasure(visitorType)), getterField.name)
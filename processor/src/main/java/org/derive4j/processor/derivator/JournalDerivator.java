@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2015, Jean-Baptiste Giraudeau <jb@giraudeau.info>
+ *
+ * This file is part of "Derive4J - Annotation Processor".
+ *
+ * "Derive4J - Annotation Processor" is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * "Derive4J - Annotation Processor" is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with "Derive4J - Annotation Processor".  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.derive4j.processor.derivator;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.NameAllocator;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.lang.model.element.Modifier;
+import org.derive4j.Visibility;
+import org.derive4j.processor.Utils;
+import org.derive4j.processor.api.DeriveResult;
+import org.derive4j.processor.api.DeriveUtils;
+import org.derive4j.processor.api.DerivedCodeSpec;
+import org.derive4j.processor.api.model.AlgebraicDataType;
+import org.derive4j.processor.api.model.DeriveContext;
+
+import static org.derive4j.processor.api.DeriveResult.result;
+
+/**
+ * Derives an append-only journal of values, encoded by the derived codec in memory-mapped segment files of a directory. Each record is
+ * the size of the encoded value (as an int) followed by the encoded value; a zero size marks the end of the records of a segment.
+ * The size is written once the value is encoded, so that partially written records are never read, and a record that fails to encode
+ * is overwritten by the next one. Values are replayed as views when the data type has views, so that replaying a journal does not
+ * decode the fields that are not matched. matchJournal replays them with the visitor of the data type (or its case lambdas) instead of a
+ * consumer, matching each record in place without allocating a view.
+ */
+public final class JournalDerivator {
+
+  private JournalDerivator() {
+  }
+
+  private static final String JOURNAL = "Journal";
+  private static final String SEGMENT_SUFFIX = ".journal";
+
+  public static DeriveResult<DerivedCodeSpec> derive(AlgebraicDataType adt, DeriveContext deriveContext, DeriveUtils deriveUtils) {
+
+    // unsupported data types are reported by the codec:
+    if (!adt.typeConstructor().typeVariables().isEmpty() || adt.dataConstruction().constructors().isEmpty()) {
+      return result(DerivedCodeSpec.none());
+    }
+
+    TypeName adtTypeName = TypeName.get(adt.typeConstructor().declaredType());
+    ClassName journalClass = Utils.getClassName(deriveContext, JOURNAL);
+    boolean isPublic = deriveContext.visibility() != Visibility.Smart;
+
+    NameAllocator nameAllocator = new NameAllocator();
+    Arrays.asList("directory", "segmentSize", "forceEvery", "segment", "segmentNumber", "unforced", "start", "consumer", "channel",
+        "position", "size", "end", "e").forEach(name -> nameAllocator.newName(name, name));
+    String adtVar = nameAllocator.newName(Utils.uncapitalize(adt.typeConstructor().typeElement().getSimpleName()), "adt var");
+    String adtsVar = nameAllocator.newName(adtVar + "s", "adts var");
+
+    MethodSpec map = MethodSpec.methodBuilder("map")
+        .addModifiers(Modifier.PRIVATE)
+        .addParameter(TypeName.INT, "number")
+        .returns(MappedByteBuffer.class)
+        .addException(IOException.class)
+        .beginControlFlow("try ($T channel = $T.open(directory.resolve($T.format($S, number)), $T.CREATE, $T.READ, $T.WRITE))",
+            FileChannel.class, FileChannel.class, String.class, "%010d" + SEGMENT_SUFFIX, StandardOpenOption.class,
+            StandardOpenOption.class, StandardOpenOption.class)
+        .addStatement("return channel.map($T.MapMode.READ_WRITE, 0, segmentSize)", FileChannel.class)
+        .endControlFlow()
+        .build();
+
+    MethodSpec write = MethodSpec.methodBuilder("write")
+        .addModifiers(Modifier.PRIVATE)
+        .addParameter(adtTypeName, adtVar)
+        .addException(IOException.class)
+        .addStatement("int start = segment.position()")
+        .beginControlFlow("try")
+        .addStatement("segment.putInt(0)")
+        .addStatement("encode($L, segment)", adtVar)
+        .nextControlFlow("catch ($T e)", BufferOverflowException.class)
+        // the size of the partially written record is left to zero, so that it ends the records of the segment:
+        .addStatement("segment.position(start)")
+        .beginControlFlow("if (start == 0)")
+        .addStatement("throw new $T($S + segmentSize)", IllegalArgumentException.class, "Record larger than the segment size: ")
+        .endControlFlow()
+        .beginControlFlow("if (forceEvery > 0)")
+        .addStatement("segment.force()")
+        .endControlFlow()
+        .addStatement("segment = map(++segmentNumber)")
+        .addStatement("write($L)", adtVar)
+        .addStatement("return")
+        .nextControlFlow("catch ($T | $T e)", RuntimeException.class, Error.class)
+        // the failed record is overwritten by the next one:
+        .addStatement("segment.position(start)")
+        .addStatement("throw e")
+        .endControlFlow()
+        .addStatement("int end = segment.position()")
+        // bytes of a failed record may follow a shorter record:
+        .beginControlFlow("if (end <= segment.limit() - 4)")
+        .addStatement("segment.putInt(end, 0)")
+        .endControlFlow()
+        .addStatement("segment.putInt(start, end - start - 4)")
+        .build();
+
+    MethodSpec force = MethodSpec.methodBuilder("force")
+        .addModifiers(Modifier.PUBLIC)
+        .addStatement("segment.force()")
+        .addStatement("unforced = 0")
+        .build();
+
+    TypeSpec.Builder journal = TypeSpec.classBuilder(JOURNAL)
+        .addModifiers(Modifier.STATIC, Modifier.FINAL)
+        .addSuperinterface(Closeable.class)
+        .addField(Path.class, "directory", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(TypeName.INT, "segmentSize", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(TypeName.INT, "forceEvery", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(FieldSpec.builder(MappedByteBuffer.class, "segment", Modifier.PRIVATE).build())
+        .addField(FieldSpec.builder(TypeName.INT, "segmentNumber", Modifier.PRIVATE).build())
+        .addField(FieldSpec.builder(TypeName.INT, "unforced", Modifier.PRIVATE).build())
+        .addMethod(MethodSpec.constructorBuilder()
+            .addModifiers(Modifier.PRIVATE)
+            .addParameter(Path.class, "directory")
+            .addParameter(TypeName.INT, "segmentSize")
+            .addParameter(TypeName.INT, "forceEvery")
+            .addException(IOException.class)
+            .addStatement("this.directory = directory")
+            .addStatement("this.segmentSize = segmentSize")
+            .addStatement("this.forceEvery = forceEvery")
+            .addStatement("$T<$T> segments = journalSegments(directory)", List.class, Path.class)
+            .addStatement("this.segmentNumber = segments.isEmpty() ? 0 : $T.parseInt(segments.get(segments.size() - 1).getFileName()" +
+                ".toString().replace($S, $S))", Integer.class, SEGMENT_SUFFIX, "")
+            .addStatement("this.segment = map(segmentNumber)")
+            .addStatement("this.segment.position(journalEnd(segment))")
+            .build())
+        .addMethod(MethodSpec.methodBuilder("append")
+            .addModifiers(Modifier.PUBLIC)
+            .addParameter(adtTypeName, adtVar)
+            .addException(IOException.class)
+            .addStatement("write($L)", adtVar)
+            .beginControlFlow("if (forceEvery > 0 && ++unforced >= forceEvery)")
+            .addStatement("force()")
+            .endControlFlow()
+            .build())
+        // a batch is forced at most once:
+        .addMethod(MethodSpec.methodBuilder("appendAll")
+            .addModifiers(Modifier.PUBLIC)
+            .addParameter(ParameterizedTypeName.get(ClassName.get(Iterable.class), WildcardTypeName.subtypeOf(adtTypeName)), adtsVar)
+            .addException(IOException.class)
+            .beginControlFlow("for ($T $L : $L)", adtTypeName, adtVar, adtsVar)
+            .addStatement("write($L)", adtVar)
+            .addStatement("unforced++")
+            .endControlFlow()
+            .beginControlFlow("if (forceEvery > 0 && unforced >= forceEvery)")
+            .addStatement("force()")
+            .endControlFlow()
+            .build())
+        .addMethod(force)
+        .addMethod(MethodSpec.methodBuilder("close")
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .addStatement("force()")
+            .build())
+        .addMethod(write)
+        .addMethod(map);
+
+    MethodSpec.Builder openJournal = MethodSpec.methodBuilder("openJournal")
+        .addModifiers(Modifier.STATIC)
+        .addParameter(Path.class, "directory")
+        .addParameter(TypeName.INT, "segmentSize")
+        .addParameter(TypeName.INT, "forceEvery")
+        .returns(journalClass)
+        .addException(IOException.class)
+        .addStatement("$T.createDirectories(directory)", Files.class)
+        .addStatement("return new $T(directory, segmentSize, forceEvery)", journalClass);
+
+    // the statements of replay methods, given the statement replaying the record at position + 4 of the segment:
+    Function<CodeBlock, CodeBlock> replaySegments = replayRecord -> CodeBlock.builder()
+        .beginControlFlow("for ($T path : journalSegments(directory))", Path.class)
+        .addStatement("$T segment", MappedByteBuffer.class)
+        .beginControlFlow("try ($1T channel = $1T.open(path, $2T.READ))", FileChannel.class, StandardOpenOption.class)
+        .addStatement("segment = channel.map($T.MapMode.READ_ONLY, 0, channel.size())", FileChannel.class)
+        .endControlFlow()
+        .addStatement("int size")
+        .beginControlFlow("for (int position = 0; position <= segment.limit() - 4 && (size = segment.getInt(position)) != 0; " +
+            "position += 4 + size)")
+        .add(replayRecord)
+        .endControlFlow()
+        .endControlFlow()
+        .build();
+
+    boolean hasView = CodecDerivator.hasView(adt.typeConstructor().typeElement(), deriveUtils);
+    List<MethodSpec.Builder> replayJournals = new ArrayList<>();
+    replayJournals.add(MethodSpec.methodBuilder("replayJournal")
+        .addModifiers(Modifier.STATIC)
+        .addParameter(Path.class, "directory")
+        .addParameter(ParameterizedTypeName.get(ClassName.get(Consumer.class), WildcardTypeName.supertypeOf(adtTypeName)), "consumer")
+        .addException(IOException.class)
+        .addCode(replaySegments.apply(hasView
+                                      ? CodeBlock.builder().addStatement("consumer.accept(view(segment, position + 4))").build()
+                                      : CodeBlock.builder()
+                                          .addStatement("segment.position(position + 4)")
+                                          .addStatement("consumer.accept(decode(segment))")
+                                          .build())));
+    // records are matched in place, without allocating a view (nor decoding the fields that are not matched). Not an overload of
+    // replayJournal, that would be ambiguous for implicit lambdas when the visitor has a single method of one argument:
+    if (hasView) {
+      MethodSpec matchMethod = Utils.overrideMethodBuilder(adt.matchMethod().element()).build();
+      replayJournals.add(MethodSpec.methodBuilder("matchJournal")
+          .addModifiers(Modifier.STATIC)
+          .addTypeVariables(matchMethod.typeVariables)
+          .addParameter(Path.class, "directory")
+          .addParameters(matchMethod.parameters)
+          .addException(IOException.class)
+          .addCode(replaySegments.apply(CodeBlock.builder()
+              .addStatement("$L", CodecDerivator.matchEncoded(adt, "segment", "position + 4", CodecDerivator.matchArguments(adt)))
+              .build())));
+    }
+
+    if (isPublic) {
+      journal.addModifiers(Modifier.PUBLIC);
+      openJournal.addModifiers(Modifier.PUBLIC);
+      replayJournals.forEach(replayJournal -> replayJournal.addModifiers(Modifier.PUBLIC));
+    }
+
+    MethodSpec journalSegments = MethodSpec.methodBuilder("journalSegments")
+        .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+        .addParameter(Path.class, "directory")
+        .returns(ParameterizedTypeName.get(List.class, Path.class))
+        .addException(IOException.class)
+        .addStatement("$T<$T> segments = new $T<>()", List.class, Path.class, ArrayList.class)
+        .beginControlFlow("try ($T<$T> paths = $T.newDirectoryStream(directory, $S))", DirectoryStream.class, Path.class, Files.class,
+            "*" + SEGMENT_SUFFIX)
+        .beginControlFlow("for ($T path : paths)", Path.class)
+        .addStatement("segments.add(path)")
+        .endControlFlow()
+        .endControlFlow()
+        // segment numbers are zero padded:
+        .addStatement("$T.sort(segments)", Collections.class)
+        .addStatement("return segments")
+        .build();
+
+    MethodSpec journalEnd = MethodSpec.methodBuilder("journalEnd")
+        .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+        .addParameter(ByteBuffer.class, "segment")
+        .returns(TypeName.INT)
+        .addStatement("int position = 0")
+        .addStatement("int size")
+        .beginControlFlow("while (position <= segment.limit() - 4 && (size = segment.getInt(position)) != 0)")
+        .addStatement("position += 4 + size")
+        .endControlFlow()
+        .addStatement("return position")
+        .build();
+
+    return result(DerivedCodeSpec.codeSpec(Collections.singletonList(journal.build()), Collections.emptyList(),
+        Stream.concat(Stream.of(openJournal.build()), Stream.concat(replayJournals.stream().map(MethodSpec.Builder::build),
+            Stream.of(journalSegments, journalEnd))).collect(Collectors.toList()), Collections.emptyList(), Collections.emptyList()));
+  }
+
+}
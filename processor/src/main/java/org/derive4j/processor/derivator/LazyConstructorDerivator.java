@@ -18,18 +18,22 @@
  */
 package org.derive4j.processor.derivator;
 
-import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
 import com.squareup.javapoet.TypeVariableName;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.stream.Collectors;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
+import org.derive4j.ArgOption;
 import org.derive4j.processor.Utils;
 import org.derive4j.processor.api.DeriveResult;
 import org.derive4j.processor.api.DeriveUtils;
@@ -64,34 +68,78 @@ public final class LazyConstructorDerivator {
     List<TypeVariableName> typeVariableNames = adt.typeConstructor().typeVariables().stream().map(TypeVariableName::get).collect(Collectors.toList());
 
     String className = "Lazy";
+    String f0Apply = deriveUtils.allAbstractMethods(lazyTypeElement).get(0).getSimpleName().toString();
+
     TypeSpec.Builder typeSpecBuilder = TypeSpec.classBuilder(className)
         .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
-        .addTypeVariables(typeVariableNames)
-        .addField(FieldSpec.builder(TypeName.get(Object.class), "lock", Modifier.PRIVATE, Modifier.FINAL).initializer("new Object()").build())
-        .addField(FieldSpec.builder(lazyArgTypeName, "expression", Modifier.PRIVATE).build())
-        .addField(FieldSpec.builder(typeName, "evaluation", Modifier.PRIVATE, Modifier.VOLATILE).build())
+        .addTypeVariables(typeVariableNames);
+
+    if (StrictConstructorDerivator.hasArgOption(adt, ArgOption.singleThreadedLazy)) {
+      typeSpecBuilder.addField(FieldSpec.builder(lazyArgTypeName, "expression", Modifier.PRIVATE).build())
+          .addField(FieldSpec.builder(typeName, "evaluation", Modifier.PRIVATE).build())
+          .addMethod(MethodSpec.methodBuilder("evaluateExpression")
+              .addModifiers(Modifier.PRIVATE)
+              .returns(typeName)
+              .addStatement("$T _evaluation = this.expression.$L()", typeName, f0Apply)
+              .addStatement("this.expression = null")
+              .addStatement("return this.evaluation = _evaluation")
+              .build());
+    } else {
+      // lock-free: concurrent first evaluations may race, the first published result wins.
+      TypeName rawTypeName = TypeName.get(deriveUtils.types().erasure(typeConstructor.declaredType()));
+      TypeName updaterTypeName = ParameterizedTypeName.get(ClassName.get(AtomicReferenceFieldUpdater.class),
+          Utils.getClassName(deriveContext, className), rawTypeName);
+      FieldSpec.Builder updater = FieldSpec.builder(updaterTypeName, "EVALUATION", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+          .initializer("$T.newUpdater($L.class, $T.class, $S)", AtomicReferenceFieldUpdater.class, className, rawTypeName, "evaluation");
+      if (!typeVariableNames.isEmpty()) {
+        updater.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "rawtypes").build());
+      }
+      typeSpecBuilder.addField(updater.build())
+          .addField(FieldSpec.builder(lazyArgTypeName, "expression", Modifier.PRIVATE, Modifier.VOLATILE).build())
+          .addField(FieldSpec.builder(typeName, "evaluation", Modifier.PRIVATE, Modifier.VOLATILE).build())
+          .addMethod(MethodSpec.methodBuilder("evaluateExpression")
+              .addModifiers(Modifier.PRIVATE)
+              .returns(typeName)
+              .addStatement("$T _expression = this.expression", lazyArgTypeName)
+              // expression is only cleared once evaluation is published:
+              .beginControlFlow("if (_expression == null)")
+              .addStatement("return this.evaluation")
+              .endControlFlow()
+              .addStatement("$T _evaluation = _expression.$L()", typeName, f0Apply)
+              .beginControlFlow("if (EVALUATION.compareAndSet(this, null, _evaluation))")
+              .addStatement("this.expression = null")
+              .addStatement("return _evaluation")
+              .endControlFlow()
+              .addStatement("return this.evaluation")
+              .build());
+    }
+
+    // Expressions returning other lazy values are forced in a loop rather than recursively, and the final
+    // (non lazy) value is memoized so that subsequent matches do not walk the chain again.
+    typeSpecBuilder.addMethod(MethodSpec.methodBuilder("eval")
+        .addModifiers(Modifier.PRIVATE)
+        .returns(typeName)
+        .addStatement("$T _evaluation = this.evaluation", typeName)
+        .beginControlFlow("if (_evaluation == null || _evaluation instanceof $L)", className)
+        .addStatement("_evaluation = this")
+        .beginControlFlow("while (_evaluation instanceof $L)", className)
+        .addStatement("$1T lazy = ($1T) _evaluation", typeVariableNames.isEmpty()
+                                                       ? Utils.getClassName(deriveContext, className)
+                                                       : ParameterizedTypeName.get(Utils.getClassName(deriveContext, className),
+                                                           typeVariableNames.toArray(new TypeName[0])))
+        .addStatement("$T next = lazy.evaluation", typeName)
+        .addStatement("_evaluation = next == null ? lazy.evaluateExpression() : next")
+        .endControlFlow()
+        .addStatement("this.evaluation = _evaluation")
+        .endControlFlow()
+        .addStatement("return _evaluation")
+        .build());
+
+    typeSpecBuilder
         .addMethod(MethodSpec.constructorBuilder()
             .addParameter(ParameterSpec.builder(lazyArgTypeName, lazyArgName).build())
             .addStatement("this.expression = $N", lazyArgName)
             .build())
-        .addMethod(MethodSpec.methodBuilder("eval")
-            .addModifiers(Modifier.PRIVATE)
-            .returns(typeName)
-            .addCode(CodeBlock.builder()
-                .addStatement("$T _evaluation = this.evaluation", typeName)
-                .beginControlFlow("if (_evaluation == null)")
-                .beginControlFlow("synchronized (this.lock)")
-                .addStatement("_evaluation = this.evaluation")
-                .beginControlFlow("if (_evaluation == null)")
-                .addStatement("this.evaluation = _evaluation = expression.$L()",
-                    deriveUtils.allAbstractMethods(lazyTypeElement).get(0).getSimpleName())
-                .addStatement("this.expression = null")
-                .endControlFlow()
-                .endControlFlow()
-                .endControlFlow()
-                .addStatement("return _evaluation")
-                .build())
-            .build())
         .addMethod(Utils.overrideMethodBuilder(adt.matchMethod().element())
             .addStatement("return eval().$L($L)", adt.matchMethod().element().getSimpleName(),
                 Utils.asArgumentsStringOld(adt.matchMethod().element().getParameters()))
@@ -103,6 +151,17 @@ public final class LazyConstructorDerivator {
       typeSpecBuilder.superclass(typeName);
     }
 
+    if (ConstructorTagDerivator.hasTaggedImplementations(adt, deriveContext)) {
+      ClassName taggedClassName = ConstructorTagDerivator.taggedClassName(deriveContext);
+      // -1 if evaluated to an instance that is not built by the derived constructors:
+      typeSpecBuilder.addSuperinterface(taggedClassName)
+          .addMethod(ConstructorTagDerivator.taggedMethodBuilder()
+              .addStatement("$T _evaluation = eval()", typeName)
+              .addStatement("return _evaluation instanceof $1T ? (($1T) _evaluation).$2L() : -1", taggedClassName,
+                  ConstructorTagDerivator.constructorTagMethodName())
+              .build());
+    }
+
     typeSpecBuilder.addMethods(optionalAsStream(findAbstractEquals(deriveUtils, typeConstructor.typeElement()).map(
         equals -> deriveUtils.overrideMethodBuilder(equals, adt.typeConstructor().declaredType())
             .addStatement("return this.eval().equals($L)", equals.getParameters().get(0).getSimpleName())
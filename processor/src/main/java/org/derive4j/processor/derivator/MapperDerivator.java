@@ -122,7 +122,7 @@ public class MapperDerivator {
         .build();
 
     return DerivedCodeSpec.codeSpec(concat(constructors.stream()
-        .filter(dc -> (dc.arguments().size() + dc.typeRestrictions().size()) > 1)
+        .filter(MapperDerivator::hasMapperInterface)
         .map(dc -> mapperTypeSpec(deriveUtils, adt, dc)), Stream.of(lambdaVisitor)).collect(Collectors.toList()), lambdaVisitorFactory);
 
   }
@@ -132,11 +132,21 @@ public class MapperDerivator {
     int nbArgs = dc.arguments().size() + dc.typeRestrictions().size();
     return (nbArgs == 0)
            ? FlavourImpl.supplierApplyMethod(deriveUtils, deriveContext)
-           : ((nbArgs == 1)
+           : (!hasMapperInterface(dc)
               ? FlavourImpl.functionApplyMethod(deriveUtils, deriveContext)
               : dc.deconstructor().visitorMethod().getSimpleName().toString());
   }
 
+  /**
+   * Constructors with several arguments get a dedicated mapper interface, and so do constructors with a single primitive argument
+   * so that it is not boxed by a function type.
+   */
+  static boolean hasMapperInterface(DataConstructor dc) {
+
+    int nbArgs = dc.arguments().size() + dc.typeRestrictions().size();
+    return (nbArgs > 1) || ((nbArgs == 1) && !dc.arguments().isEmpty() && dc.arguments().get(0).type().getKind().isPrimitive());
+  }
+
   static String mapperInterfaceName(DataConstructor dc) {
 
     return Utils.capitalize(dc.name()) + "Mapper";
@@ -176,7 +186,7 @@ public class MapperDerivator {
     return adt.dataConstruction().isVisitorDispatch()
            ? ((argsTypeNames.length == 0)
               ? ParameterizedTypeName.get(ClassName.get(FlavourImpl.findF0(deriveContext.flavour(), deriveUtils.elements())), returnType)
-              : ((argsTypeNames.length == 1)
+              : (!hasMapperInterface(dc)
                  ? ParameterizedTypeName.get(ClassName.get(FlavourImpl.findF(deriveContext.flavour(), deriveUtils.elements())), argsTypeNames[0],
                   returnType)
                  : ParameterizedTypeName.get(Utils.getClassName(deriveContext, mapperInterfaceName(dc)), concat(
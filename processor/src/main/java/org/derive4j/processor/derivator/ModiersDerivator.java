@@ -21,20 +21,27 @@ package org.derive4j.processor.derivator;
 import com.squareup.javapoet.AnnotationSpec;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.NameAllocator;
 import com.squareup.javapoet.ParameterSpec;
 import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
 import com.squareup.javapoet.TypeVariableName;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongUnaryOperator;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.type.TypeVariable;
 import org.derive4j.Visibility;
@@ -45,21 +52,151 @@ import org.derive4j.processor.api.DerivedCodeSpec;
 import org.derive4j.processor.api.model.AlgebraicDataType;
 import org.derive4j.processor.api.model.DataArgument;
 import org.derive4j.processor.api.model.DataConstructions;
+import org.derive4j.processor.api.model.DataConstructor;
 import org.derive4j.processor.api.model.DeriveContext;
 import org.derive4j.processor.api.model.MultipleConstructorsSupport;
 import org.derive4j.processor.api.model.TypeRestriction;
 
 import static org.derive4j.processor.Utils.joinStringsAsArguments;
-import static org.derive4j.processor.api.DeriveResult.result;
 
 public final class ModiersDerivator {
 
   public static DeriveResult<DerivedCodeSpec> derive(AlgebraicDataType adt, DeriveContext deriveContext, DeriveUtils deriveUtils) {
 
-    return result(adt.fields()
+    return PathModifiersDerivator.derive(adt, deriveContext, deriveUtils).map(pathModifiers -> adt.fields()
         .stream()
         .map(da -> generateModfier(da, adt, deriveContext, deriveUtils))
-        .reduce(DerivedCodeSpec.none(), DerivedCodeSpec::append));
+        .reduce(DerivedCodeSpec.none(), DerivedCodeSpec::append)
+        .append(DataConstructions.cases()
+            .oneConstructor(constructor -> (constructor.arguments().size() > 1) && constructor.typeRestrictions().isEmpty()
+                                           ? generateUpdate(constructor, adt, deriveContext, deriveUtils)
+                                           : DerivedCodeSpec.none())
+            .otherwise(DerivedCodeSpec::none)
+            .apply(adt.dataConstruction()))
+        .append(pathModifiers));
+  }
+
+  /**
+   * A mutable XxxUpdate collecting modifiers for several fields of a single constructor data type, and applying them with a single
+   * match and at most one allocation.
+   */
+  private static DerivedCodeSpec generateUpdate(DataConstructor constructor, AlgebraicDataType adt, DeriveContext deriveContext,
+      DeriveUtils deriveUtils) {
+
+    TypeElement f1 = FlavourImpl.findF(deriveContext.flavour(), deriveUtils.elements());
+    String f1Apply = deriveUtils.allAbstractMethods(f1).get(0).getSimpleName().toString();
+    TypeName adtTypeName = TypeName.get(adt.typeConstructor().declaredType());
+    List<TypeVariableName> typeVariables = adt.typeConstructor().typeVariables().stream().map(TypeVariableName::get).collect(Collectors.toList());
+
+    String updateClassName = adt.typeConstructor().typeElement().getSimpleName() + "Update";
+    TypeName updateTypeName = typeVariables.isEmpty()
+                              ? Utils.getClassName(deriveContext, updateClassName)
+                              : ParameterizedTypeName.get(Utils.getClassName(deriveContext, updateClassName),
+                                  typeVariables.toArray(new TypeName[0]));
+
+    NameAllocator memberNames = new NameAllocator();
+    String adtArg = memberNames.newName(Utils.uncapitalize(adt.typeConstructor().typeElement().getSimpleName()), "adt arg");
+    String updateField = memberNames.newName("update", "update member");
+    String updatedVar = memberNames.newName("updated", "updated var");
+    constructor.arguments().forEach(da -> memberNames.newName(da.fieldName() + "Mod", da.fieldName() + " mod"));
+
+    TypeSpec.Builder updateClass = TypeSpec.classBuilder(updateClassName)
+        .addModifiers(Modifier.STATIC, Modifier.FINAL)
+        .addTypeVariables(typeVariables);
+    if (deriveContext.visibility() != Visibility.Smart) {
+      updateClass.addModifiers(Modifier.PUBLIC);
+    }
+
+    NameAllocator fieldNames = memberNames.clone();
+    List<String> args = constructor.arguments()
+        .stream()
+        .map(DataArgument::fieldName)
+        .map(fn -> fieldNames.newName(fn, fn + " field"))
+        .collect(Collectors.toList());
+    List<String> newValues = constructor.arguments()
+        .stream()
+        .map(da -> fieldNames.newName("new" + Utils.capitalize(da.fieldName()), da.fieldName() + " new value"))
+        .collect(Collectors.toList());
+
+    CodeBlock.Builder updateLambda = CodeBlock.builder().add("($L) -> {\n$>", joinStringsAsArguments(args.stream()));
+
+    for (int i = 0; i < constructor.arguments().size(); i++) {
+      DataArgument field = constructor.arguments().get(i);
+      String modField = memberNames.get(field.fieldName() + " mod");
+      Optional<TypeElement> primitiveOperator = primitiveOperator(field.type().getKind()).map(
+          operatorClass -> deriveUtils.elements().getTypeElement(operatorClass.getName()));
+      String modApply = primitiveOperator.map(operator -> deriveUtils.allAbstractMethods(operator).get(0).getSimpleName().toString())
+          .orElse(f1Apply);
+      TypeMirror boxedFieldType = field.type().accept(Utils.asBoxedType, deriveUtils.types());
+      TypeName modTypeName = primitiveOperator.<TypeName>map(ClassName::get)
+          .orElseGet(() -> ParameterizedTypeName.get(ClassName.get(f1), TypeName.get(boxedFieldType), TypeName.get(boxedFieldType)));
+      String capitalizedFieldName = Utils.capitalize(field.fieldName());
+      String setterArgName = "new" + capitalizedFieldName;
+      String boxedModMethodName = "mod" + capitalizedFieldName;
+      String modMethodName = primitiveModifierName(boxedModMethodName, field.type().getKind()).orElse(boxedModMethodName);
+      NameAllocator modNames = memberNames.clone();
+      String previousVar = modNames.newName("previous", "previous var");
+      String valueParam = modNames.newName(field.fieldName(), "value param");
+
+      updateClass.addField(FieldSpec.builder(modTypeName, modField, Modifier.PRIVATE).build())
+          .addMethod(MethodSpec.methodBuilder("set" + capitalizedFieldName)
+              .addModifiers(Modifier.PUBLIC)
+              .addParameter(TypeName.get(boxedFieldType), setterArgName)
+              .returns(updateTypeName)
+              .addStatement("return $L(__ -> $L)", modMethodName, setterArgName)
+              .build())
+          .addMethod(MethodSpec.methodBuilder(modMethodName)
+              .addModifiers(Modifier.PUBLIC)
+              .addParameter(modTypeName, modField)
+              .returns(updateTypeName)
+              // successive modifiers of the same field are composed:
+              .addStatement("$T $L = this.$L", modTypeName, previousVar, modField)
+              .addStatement("this.$1L = $2L == null ? $1L : $3L -> $1L.$4L($2L.$4L($3L))", modField, previousVar, valueParam, modApply)
+              .addStatement("return this")
+              .build());
+
+      if (primitiveOperator.isPresent()) {
+        updateClass.addMethod(MethodSpec.methodBuilder(boxedModMethodName)
+            .addModifiers(Modifier.PUBLIC)
+            .addParameter(ParameterizedTypeName.get(ClassName.get(f1), TypeName.get(boxedFieldType), TypeName.get(boxedFieldType)), modField)
+            .returns(updateTypeName)
+            .addStatement("return $L($L::$L)", modMethodName, modField, f1Apply)
+            .build());
+      }
+
+      updateLambda.add("$T $L = this.$L == null ? $L : this.$L.$L($L);\n", TypeName.get(field.type()), newValues.get(i), modField, args.get(i),
+          modField, modApply, args.get(i));
+    }
+
+    updateLambda.add("return $L ? null : $L($L);\n$<}", Utils.joinStrings(IntStream.range(0, args.size())
+        .mapToObj(i -> unchangedTest(constructor.arguments().get(i).type(), newValues.get(i), args.get(i))), " && "), constructor.name(),
+        joinStringsAsArguments(newValues.stream()));
+
+    updateClass.addField(FieldSpec.builder(MapperDerivator.mapperTypeName(adt, constructor, deriveContext, deriveUtils, adtTypeName), updateField,
+        Modifier.PRIVATE, Modifier.FINAL).initializer(updateLambda.build()).build())
+        .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build())
+        .addMethod(MethodSpec.methodBuilder("apply")
+            .addModifiers(Modifier.PUBLIC)
+            .addParameter(adtTypeName, adtArg)
+            .returns(adtTypeName)
+            // match returns null if no field was changed:
+            .addStatement("$T $L = $L.$L(this.$L)", adtTypeName, updatedVar, adtArg, adt.matchMethod().element().getSimpleName(), updateField)
+            .addStatement("return $1L == null ? $2L : $1L", updatedVar, adtArg)
+            .build());
+
+    MethodSpec.Builder factory = MethodSpec.methodBuilder("update")
+        .addModifiers(Modifier.STATIC)
+        .addTypeVariables(typeVariables)
+        .returns(updateTypeName)
+        .addStatement("return new $L$L()", updateClassName, typeVariables.isEmpty()
+                                                           ? ""
+                                                           : "<>");
+
+    if (deriveContext.visibility() != Visibility.Smart) {
+      factory.addModifiers(Modifier.PUBLIC);
+    }
+
+    return DerivedCodeSpec.codeSpec(updateClass.build(), factory.build());
   }
 
   private static DerivedCodeSpec generateModfier(DataArgument field, AlgebraicDataType adt, DeriveContext deriveContext, DeriveUtils deriveUtils) {
@@ -67,6 +204,10 @@ public final class ModiersDerivator {
     String moderArg = field.fieldName() + "Mod";
     TypeElement f1 = FlavourImpl.findF(deriveContext.flavour(), deriveUtils.elements());
     String f1Apply = deriveUtils.allAbstractMethods(f1).get(0).getSimpleName().toString();
+    // int, long and double fields are modified through the corresponding JDK operator, to avoid boxing:
+    Optional<TypeElement> primitiveOperator = primitiveOperator(field.type().getKind()).map(
+        operatorClass -> deriveUtils.elements().getTypeElement(operatorClass.getName()));
+    String modApply = deriveUtils.allAbstractMethods(primitiveOperator.orElse(f1)).get(0).getSimpleName().toString();
 
     List<TypeVariable> uniqueTypeVariables = getUniqueTypeVariables(field, adt.fields(), deriveUtils);
 
@@ -77,7 +218,8 @@ public final class ModiersDerivator {
 
     TypeMirror boxedFieldType = field.type().accept(Utils.asBoxedType, deriveUtils.types());
 
-    String modMethodName = "mod" + Utils.capitalize(field.fieldName());
+    String boxedModMethodName = "mod" + Utils.capitalize(field.fieldName());
+    String modMethodName = primitiveModifierName(boxedModMethodName, field.type().getKind()).orElse(boxedModMethodName);
 
     NameAllocator nameAllocator = new NameAllocator();
     nameAllocator.newName(modMethodName);
@@ -90,9 +232,9 @@ public final class ModiersDerivator {
         .addTypeVariables(uniqueTypeVariables.stream()
             .map(utv -> TypeVariableName.get(adt.matchMethod().returnTypeVariable().toString() + utv.toString()))
             .collect(Collectors.toList()))
-        .addParameter(ParameterSpec.builder(
-            ParameterizedTypeName.get(ClassName.get(f1), TypeName.get(boxedFieldType), deriveUtils.resolveToTypeName(boxedFieldType, polymorphism)),
-            moderArg).build())
+        .addParameter(ParameterSpec.builder(primitiveOperator.<TypeName>map(ClassName::get)
+            .orElseGet(() -> ParameterizedTypeName.get(ClassName.get(f1), TypeName.get(boxedFieldType),
+                deriveUtils.resolveToTypeName(boxedFieldType, polymorphism))), moderArg).build())
         .returns(ParameterizedTypeName.get(ClassName.get(f1), TypeName.get(adt.typeConstructor().declaredType()),
             deriveUtils.resolveToTypeName(adt.typeConstructor().declaredType(), polymorphism)));
 
@@ -105,33 +247,67 @@ public final class ModiersDerivator {
       modBuilder.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build());
     }
 
-    CodeBlock lambdas = adt.dataConstruction()
+    // Non polymorphic modifiers return the original instance if the field is left unchanged (case lambdas then return null):
+    boolean identityPreserving = uniqueTypeVariables.isEmpty() &&
+        adt.dataConstruction().constructors().stream().allMatch(dc -> dc.typeRestrictions().isEmpty());
+
+    List<CodeBlock> caseLambdas = adt.dataConstruction()
         .constructors()
         .stream()
-        .map(constructor -> CodeBlock.builder()
-            .add("($L) -> " +
-                    (constructor.typeRestrictions().isEmpty()
-                     ? "$L"
-                     : "($T) ") +
-                    "$L($L)", joinStringsAsArguments(Stream.concat(
-                constructor.arguments().stream().map(DataArgument::fieldName).map(fn -> nameAllocator.clone().newName(fn, fn + " field")), constructor
-                    .typeRestrictions()
-                    .stream()
-                    .map(TypeRestriction::idFunction)
-                    .map(DataArgument::fieldName)
-                    .map(fn -> nameAllocator.clone().newName(fn, fn + " field")))), constructor.typeRestrictions().isEmpty()
-                                                                                        ? ""
-                                                                                        : ClassName.get(adt.typeConstructor().typeElement()),
-                constructor.name(), joinStringsAsArguments(constructor.arguments()
-                    .stream()
-                    .map(DataArgument::fieldName)
-                    .map(fn -> fn.equals(field.fieldName())
-                               ? (moderArg + '.' + f1Apply + "(" + nameAllocator.clone().newName(fn, fn + " field") + ")")
-                               : nameAllocator.clone().newName(fn, fn + " field"))))
-            .build())
+        .map(constructor -> identityPreserving
+                            ? identityPreservingCaseLambda(constructor, field, moderArg, modApply, nameAllocator)
+                            : CodeBlock.builder()
+                                .add("($L) -> " +
+                                        (constructor.typeRestrictions().isEmpty()
+                                         ? "$L"
+                                         : "($T) ") +
+                                        "$L($L)", joinStringsAsArguments(Stream.concat(
+                                    constructor.arguments().stream().map(DataArgument::fieldName).map(fn -> nameAllocator.clone().newName(fn, fn + " field")),
+                                    constructor.typeRestrictions()
+                                        .stream()
+                                        .map(TypeRestriction::idFunction)
+                                        .map(DataArgument::fieldName)
+                                        .map(fn -> nameAllocator.clone().newName(fn, fn + " field")))), constructor.typeRestrictions().isEmpty()
+                                                                                                            ? ""
+                                                                                                            : ClassName.get(
+                                                                                                                adt.typeConstructor().typeElement()),
+                                    constructor.name(), joinStringsAsArguments(constructor.arguments()
+                                        .stream()
+                                        .map(DataArgument::fieldName)
+                                        .map(fn -> fn.equals(field.fieldName())
+                                                   ? (moderArg + '.' + modApply + "(" + nameAllocator.clone().newName(fn, fn + " field") + ")")
+                                                   : nameAllocator.clone().newName(fn, fn + " field"))))
+                                .build())
+        .collect(Collectors.toList());
+
+    CodeBlock lambdas = caseLambdas.stream()
         .reduce((cb1, cb2) -> CodeBlock.builder().add(cb1).add(",\n").add(cb2).build())
         .orElse(CodeBlock.builder().build());
 
+    String modifiedVar = nameAllocator.newName("modified");
+    TypeName adtTypeName = TypeName.get(adt.typeConstructor().declaredType());
+    // match(...) returns null if the field was left unchanged:
+    Function<String, CodeBlock> identityPreservingFunction = matchArgs -> CodeBlock.builder()
+        .add("return $L -> {\n$>", adtArg)
+        .add("$T $L = $L.$L($L);\n", adtTypeName, modifiedVar, adtArg, adt.matchMethod().element().getSimpleName(), matchArgs)
+        .add("return $1L == null ? $2L : $1L;\n$<};\n", modifiedVar, adtArg)
+        .build();
+
+    // for functions dispatch, case lambdas are allocated once per modifier rather than once per modified value:
+    Function<List<DataConstructor>, MethodSpec> functionsDispatchModifier = constructors -> {
+      if (!identityPreserving) {
+        return modBuilder.addStatement("return $1L -> $1L.$2L($3L)", adtArg, adt.matchMethod().element().getSimpleName(), lambdas).build();
+      }
+      List<String> caseVars = constructors.stream()
+          .map(dc -> nameAllocator.newName(Utils.uncapitalize(dc.name()) + "Case", dc.name() + " case"))
+          .collect(Collectors.toList());
+      for (int i = 0; i < constructors.size(); i++) {
+        modBuilder.addCode("$T $L = $L;\n", MapperDerivator.mapperTypeName(adt, constructors.get(i), deriveContext, deriveUtils, adtTypeName),
+            caseVars.get(i), caseLambdas.get(i));
+      }
+      return modBuilder.addCode(identityPreservingFunction.apply(joinStringsAsArguments(caseVars.stream()))).build();
+    };
+
     String setterArgName = "new" + Utils.capitalize(field.fieldName());
     MethodSpec.Builder setMethod = MethodSpec.methodBuilder("set" + Utils.capitalize(field.fieldName()))
         .addModifiers(Modifier.STATIC)
@@ -144,34 +320,113 @@ public final class ModiersDerivator {
             deriveUtils.resolveToTypeName(adt.typeConstructor().declaredType(), polymorphism)))
         .addStatement("return $L(__ -> $L)", modMethodName, setterArgName);
 
+    // the modifier taking a function of the boxed field type is kept for primitive fields, delegating to the primitive one:
+    Optional<MethodSpec.Builder> boxedModMethod = primitiveOperator.map(operator -> MethodSpec.methodBuilder(boxedModMethodName)
+        .addModifiers(Modifier.STATIC)
+        .addTypeVariables(adt.typeConstructor().typeVariables().stream().map(TypeVariableName::get).collect(Collectors.toList()))
+        .addParameter(ParameterizedTypeName.get(ClassName.get(f1), TypeName.get(boxedFieldType), TypeName.get(boxedFieldType)), moderArg)
+        .returns(ParameterizedTypeName.get(ClassName.get(f1), TypeName.get(adt.typeConstructor().declaredType()),
+            TypeName.get(adt.typeConstructor().declaredType())))
+        .addStatement("return $L($L::$L)", modMethodName, moderArg, f1Apply));
+
     if (deriveContext.visibility() != Visibility.Smart) {
       setMethod.addModifiers(Modifier.PUBLIC);
+      boxedModMethod.ifPresent(boxedMod -> boxedMod.addModifiers(Modifier.PUBLIC));
     }
 
+    Function<MethodSpec, DerivedCodeSpec> withSetterAndBoxedModifier = modifier -> DerivedCodeSpec.methodSpecs(Stream.of(
+        Stream.of(setMethod.build()), boxedModMethod.map(MethodSpec.Builder::build).map(Stream::of).orElse(Stream.empty()), Stream.of(modifier))
+        .flatMap(Function.identity())
+        .collect(Collectors.toList()));
+
     return DataConstructions.cases()
         .multipleConstructors(MultipleConstructorsSupport.cases()
             .visitorDispatch((visitorParam, visitorType, constructors) -> {
 
               String visitorVarName = Utils.uncapitalize(visitorType.asElement().getSimpleName());
 
-              return DerivedCodeSpec.methodSpecs(Arrays.asList(setMethod.build(), modBuilder.addStatement("$T $L = $T.$L($L)",
+              modBuilder.addStatement("$T $L = $T.$L($L)",
                   deriveUtils.resolveToTypeName(visitorType, tv -> deriveUtils.types().isSameType(tv, adt.matchMethod().returnTypeVariable())
                                                                    ? Optional.of(
                       deriveUtils.resolveToTypeName(adt.typeConstructor().declaredType(), polymorphism))
                                                                    : Optional.empty()), visitorVarName,
                   ClassName.get(deriveContext.targetPackage(), deriveContext.targetClassName()), MapperDerivator.visitorLambdaFactoryName(adt),
-                  lambdas)
-                  .addStatement("return $1L -> $1L.$2L($3L)", adtArg, adt.matchMethod().element().getSimpleName(), visitorVarName)
-                  .build()));
+                  lambdas);
+              if (identityPreserving) {
+                modBuilder.addCode(identityPreservingFunction.apply(visitorVarName));
+              } else {
+                modBuilder.addStatement("return $1L -> $1L.$2L($3L)", adtArg, adt.matchMethod().element().getSimpleName(), visitorVarName);
+              }
+              return withSetterAndBoxedModifier.apply(modBuilder.build());
             })
-            .functionsDispatch(constructors -> DerivedCodeSpec.methodSpecs(Arrays.asList(setMethod.build(),
-                modBuilder.addStatement("return $1L -> $1L.$2L($3L)", adtArg, adt.matchMethod().element().getSimpleName(), lambdas).build()))))
-        .oneConstructor(constructor -> DerivedCodeSpec.methodSpecs(Arrays.asList(setMethod.build(),
-            modBuilder.addStatement("return $1L -> $1L.$2L($3L)", adtArg, adt.matchMethod().element().getSimpleName(), lambdas).build())))
+            .functionsDispatch(constructors -> withSetterAndBoxedModifier.apply(functionsDispatchModifier.apply(constructors))))
+        .oneConstructor(constructor -> withSetterAndBoxedModifier.apply(functionsDispatchModifier.apply(Collections.singletonList(constructor))))
         .noConstructor(DerivedCodeSpec::none)
         .apply(adt.dataConstruction());
   }
 
+  private static CodeBlock identityPreservingCaseLambda(DataConstructor constructor, DataArgument field, String moderArg, String modApply,
+      NameAllocator nameAllocator) {
+
+    NameAllocator fieldNames = nameAllocator.clone();
+    List<String> args = constructor.arguments()
+        .stream()
+        .map(DataArgument::fieldName)
+        .map(fn -> fieldNames.newName(fn, fn + " field"))
+        .collect(Collectors.toList());
+
+    Optional<DataArgument> modifiedArgument = constructor.arguments().stream().filter(da -> da.fieldName().equals(field.fieldName())).findFirst();
+    if (!modifiedArgument.isPresent()) {
+      return CodeBlock.builder().add("($L) -> null", joinStringsAsArguments(args.stream())).build();
+    }
+
+    String oldValue = fieldNames.get(field.fieldName() + " field");
+    String newValue = fieldNames.newName("new" + Utils.capitalize(field.fieldName()), "new value");
+    TypeMirror type = modifiedArgument.get().type();
+
+    return CodeBlock.builder()
+        .add("($L) -> {\n$>", joinStringsAsArguments(args.stream()))
+        .add("$T $L = $L.$L($L);\n", TypeName.get(type), newValue, moderArg, modApply, oldValue)
+        .add("return $L ? null : $L($L);\n$<}", unchangedTest(type, newValue, oldValue), constructor.name(),
+            joinStringsAsArguments(args.stream().map(arg -> arg.equals(oldValue) ? newValue : arg)))
+        .build();
+  }
+
+  static String unchangedTest(TypeMirror type, String newValue, String oldValue) {
+
+    switch (type.getKind()) {
+      case DOUBLE:
+        return "Double.doubleToRawLongBits(" + newValue + ") == Double.doubleToRawLongBits(" + oldValue + ')';
+      case FLOAT:
+        return "Float.floatToRawIntBits(" + newValue + ") == Float.floatToRawIntBits(" + oldValue + ')';
+      default:
+        return newValue + " == " + oldValue;
+    }
+  }
+
+  /**
+   * Name of the modifier taking the primitive operator of an int, long or double field (eg. modNumberAsInt), the modifier of the
+   * given name taking a function of the boxed type.
+   */
+  static Optional<String> primitiveModifierName(String modifierName, TypeKind kind) {
+
+    return primitiveOperator(kind).map(operator -> modifierName + "As" + operator.getSimpleName().replace("UnaryOperator", ""));
+  }
+
+  static Optional<Class<?>> primitiveOperator(TypeKind kind) {
+
+    switch (kind) {
+      case INT:
+        return Optional.of(IntUnaryOperator.class);
+      case LONG:
+        return Optional.of(LongUnaryOperator.class);
+      case DOUBLE:
+        return Optional.of(DoubleUnaryOperator.class);
+      default:
+        return Optional.empty();
+    }
+  }
+
   private static List<TypeVariable> getUniqueTypeVariables(DataArgument field, List<DataArgument> allFields, DeriveUtils deriveUtils) {
 
     return deriveUtils.typeVariablesIn(field.type()).stream()
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2015, Jean-Baptiste Giraudeau <jb@giraudeau.info>
+ *
+ * This file is part of "Derive4J - Annotation Processor".
+ *
+ * "Derive4J - Annotation Processor" is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * "Derive4J - Annotation Processor" is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with "Derive4J - Annotation Processor".  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.derive4j.processor.derivator;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.NameAllocator;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import org.derive4j.Data;
+import org.derive4j.Make;
+import org.derive4j.Visibility;
+import org.derive4j.processor.DerivingProcessor;
+import org.derive4j.processor.Utils;
+import org.derive4j.processor.api.DeriveResult;
+import org.derive4j.processor.api.DeriveUtils;
+import org.derive4j.processor.api.DerivedCodeSpec;
+import org.derive4j.processor.api.model.AlgebraicDataType;
+import org.derive4j.processor.api.model.DataArgument;
+import org.derive4j.processor.api.model.DataConstructor;
+import org.derive4j.processor.api.model.DeriveContext;
+
+import static org.derive4j.processor.Utils.joinStringsAsArguments;
+import static org.derive4j.processor.Utils.traverseResults;
+import static org.derive4j.processor.api.DeriveMessage.message;
+import static org.derive4j.processor.api.DeriveResult.error;
+import static org.derive4j.processor.api.DeriveResult.result;
+import static org.derive4j.processor.api.MessageLocalization.onElement;
+
+/**
+ * Derives fused modifiers for the paths declared in {@link org.derive4j.Derive#paths()}: the visitors of every level of the path
+ * are allocated once per modifier, and a modified value is rebuilt by a single descent through the nested data types, without
+ * intermediate functions nor copies (and without any copy at all if the targeted field is left unchanged).
+ */
+final class PathModifiersDerivator {
+
+  private PathModifiersDerivator() {
+  }
+
+  private static final class PathStep {
+    final AlgebraicDataType adt;
+    final ClassName derivedClass;
+    final DataArgument field;
+
+    PathStep(AlgebraicDataType adt, ClassName derivedClass, DataArgument field) {
+
+      this.adt = adt;
+      this.derivedClass = derivedClass;
+      this.field = field;
+    }
+  }
+
+  static DeriveResult<DerivedCodeSpec> derive(AlgebraicDataType adt, DeriveContext deriveContext, DeriveUtils deriveUtils) {
+
+    return traverseResults(deriveContext.paths(), path -> pathSteps(path, adt, deriveContext, deriveUtils).map(
+        steps -> pathModifier(steps, deriveContext, deriveUtils))).map(
+        codeSpecs -> codeSpecs.stream().reduce(DerivedCodeSpec.none(), DerivedCodeSpec::append));
+  }
+
+  private static DeriveResult<List<PathStep>> pathSteps(String path, AlgebraicDataType adt, DeriveContext deriveContext,
+      DeriveUtils deriveUtils) {
+
+    List<String> fieldNames = Arrays.asList(path.split("\\.", -1));
+    if (fieldNames.size() < 2) {
+      return error(message("Path '" + path + "' must go through at least one nested data type",
+          onElement(adt.typeConstructor().typeElement())));
+    }
+    return pathSteps(path, fieldNames, adt, ClassName.get(deriveContext.targetPackage(), deriveContext.targetClassName()), adt,
+        deriveUtils);
+  }
+
+  private static DeriveResult<List<PathStep>> pathSteps(String path, List<String> fieldNames, AlgebraicDataType adt, ClassName derivedClass,
+      AlgebraicDataType rootAdt, DeriveUtils deriveUtils) {
+
+    TypeElement rootElement = rootAdt.typeConstructor().typeElement();
+    Optional<DataArgument> field = adt.fields().stream().filter(da -> da.fieldName().equals(fieldNames.get(0))).findFirst();
+
+    if (!field.isPresent()) {
+      return error(message("Invalid path '" + path + "': " + adt.typeConstructor().typeElement().getSimpleName() + " has no field named '" +
+          fieldNames.get(0) + "'", onElement(rootElement)));
+    }
+    if (!adt.typeConstructor().typeVariables().isEmpty() ||
+        adt.dataConstruction().constructors().stream().anyMatch(dc -> !dc.typeRestrictions().isEmpty())) {
+      return error(message("Invalid path '" + path + "': " + adt.typeConstructor().typeElement().getSimpleName() +
+          " must have neither type parameters nor type restrictions", onElement(rootElement)));
+    }
+
+    PathStep step = new PathStep(adt, derivedClass, field.get());
+    if (fieldNames.size() == 1) {
+      return result(Collections.singletonList(step));
+    }
+
+    TypeMirror fieldType = field.get().type();
+    Optional<TypeElement> nestedElement = fieldType.getKind() == TypeKind.DECLARED
+                                          ? Optional.of((TypeElement) ((DeclaredType) fieldType).asElement())
+                                          : Optional.empty();
+    Optional<Data> nestedData = nestedElement.map(e -> e.getAnnotation(Data.class));
+
+    if (!nestedData.isPresent()) {
+      return error(message("Invalid path '" + path + "': field '" + fieldNames.get(0) + "' is not a @Data type", onElement(rootElement)));
+    }
+    if (!BuiltinDerivator.makeWithDpendencies(nestedData.get().value().make()).contains(Make.constructors) ||
+        (nestedData.get().value().withVisibility() == Visibility.Smart)) {
+      return error(message("Invalid path '" + path + "': " + nestedElement.get().getSimpleName() + " must derive public constructors",
+          onElement(rootElement)));
+    }
+
+    ClassName nestedDerivedClass = ClassName.get(Utils.getPackage.visit(nestedElement.get()).getQualifiedName().toString(),
+        DerivingProcessor.deduceDerivedClassName(nestedData.get().value(), nestedElement.get()));
+
+    return deriveUtils.parseAlgebraicDataType(nestedElement.get())
+        .bind(nestedAdt -> pathSteps(path, fieldNames.subList(1, fieldNames.size()), nestedAdt, nestedDerivedClass, rootAdt, deriveUtils))
+        .map(nestedSteps -> {
+          List<PathStep> steps = new ArrayList<>();
+          steps.add(step);
+          steps.addAll(nestedSteps);
+          return steps;
+        });
+  }
+
+  private static DerivedCodeSpec pathModifier(List<PathStep> steps, DeriveContext deriveContext, DeriveUtils deriveUtils) {
+
+    AlgebraicDataType rootAdt = steps.get(0).adt;
+    DataArgument targetField = steps.get(steps.size() - 1).field;
+    TypeName rootTypeName = TypeName.get(rootAdt.typeConstructor().declaredType());
+
+    String pathName = steps.stream().map(step -> Utils.capitalize(step.field.fieldName())).collect(Collectors.joining());
+    String boxedModMethodName = "mod" + pathName;
+    String modMethodName = ModiersDerivator.primitiveModifierName(boxedModMethodName, targetField.type().getKind()).orElse(boxedModMethodName);
+
+    TypeElement f1 = FlavourImpl.findF(deriveContext.flavour(), deriveUtils.elements());
+    String f1Apply = deriveUtils.allAbstractMethods(f1).get(0).getSimpleName().toString();
+    Optional<TypeElement> primitiveOperator = ModiersDerivator.primitiveOperator(targetField.type().getKind())
+        .map(operatorClass -> deriveUtils.elements().getTypeElement(operatorClass.getName()));
+    String modApply = deriveUtils.allAbstractMethods(primitiveOperator.orElse(f1)).get(0).getSimpleName().toString();
+    TypeMirror boxedFieldType = targetField.type().accept(Utils.asBoxedType, deriveUtils.types());
+
+    NameAllocator nameAllocator = new NameAllocator();
+    nameAllocator.newName(modMethodName);
+    String moderArg = nameAllocator.newName(targetField.fieldName() + "Mod", "moder arg");
+    String adtArg = nameAllocator.newName(Utils.uncapitalize(rootAdt.typeConstructor().typeElement().getSimpleName()), "adt arg");
+    String modifiedVar = nameAllocator.newName("modified", "modified var");
+
+    // names of the visitors (or case lambdas) passed to the match method of each level:
+    List<List<String>> caseVars = steps.stream()
+        .map(step -> fusedVisitor(step.adt)
+                     ? Collections.singletonList(
+            nameAllocator.newName(Utils.uncapitalize(step.adt.typeConstructor().typeElement().getSimpleName()) + "Cases"))
+                     : step.adt.dataConstruction()
+                         .constructors()
+                         .stream()
+                         .map(dc -> nameAllocator.newName(Utils.uncapitalize(dc.name()) + "Case"))
+                         .collect(Collectors.toList()))
+        .collect(Collectors.toList());
+
+    MethodSpec.Builder modBuilder = MethodSpec.methodBuilder(modMethodName)
+        .addModifiers(Modifier.STATIC)
+        .addParameter(primitiveOperator.<TypeName>map(ClassName::get)
+            .orElseGet(() -> ParameterizedTypeName.get(ClassName.get(f1), TypeName.get(boxedFieldType), TypeName.get(boxedFieldType))), moderArg)
+        .returns(ParameterizedTypeName.get(ClassName.get(f1), rootTypeName, rootTypeName));
+
+    // visitors are declared from the innermost level outward, each one matching on the next level with the previous one:
+    for (int i = steps.size() - 1; i >= 0; i--) {
+      PathStep step = steps.get(i);
+      TypeName adtTypeName = TypeName.get(step.adt.typeConstructor().declaredType());
+      ExecutableElement matchMethod = step.adt.matchMethod().element();
+      Function<TypeMirror, TypeName> resolveReturnType = t -> deriveUtils.resolveToTypeName(t,
+          tv -> deriveUtils.types().isSameType(tv, step.adt.matchMethod().returnTypeVariable())
+                ? Optional.of(adtTypeName)
+                : Optional.empty());
+      boolean innermost = i == steps.size() - 1;
+      Function<String, CodeBlock> newFieldValue = innermost
+                                                  ? oldValue -> CodeBlock.of("$L.$L($L)", moderArg, modApply, oldValue)
+                                                  : nextMatch(steps.get(i + 1), caseVars.get(i + 1));
+
+      List<DataConstructor> constructors = step.adt.dataConstruction().constructors();
+      if (fusedVisitor(step.adt)) {
+        TypeSpec.Builder visitor = TypeSpec.anonymousClassBuilder("")
+            .addSuperinterface(resolveReturnType.apply(matchMethod.getParameters().get(0).asType()));
+        for (DataConstructor dc : constructors) {
+          NameAllocator argNames = nameAllocator.clone();
+          MethodSpec.Builder caseMethod = MethodSpec.methodBuilder(dc.name())
+              .addAnnotation(Override.class)
+              .addModifiers(Modifier.PUBLIC)
+              .returns(adtTypeName);
+          dc.arguments().forEach(da -> caseMethod.addParameter(TypeName.get(da.type()), argNames.newName(da.fieldName(), da.fieldName() + " field")));
+          visitor.addMethod(caseMethod.addCode(caseBody(step, dc, innermost, argNames, newFieldValue)).build());
+        }
+        modBuilder.addCode("$T $L = $L;\n", resolveReturnType.apply(matchMethod.getParameters().get(0).asType()), caseVars.get(i).get(0),
+            visitor.build());
+      } else {
+        for (int c = 0; c < constructors.size(); c++) {
+          DataConstructor dc = constructors.get(c);
+          NameAllocator argNames = nameAllocator.clone();
+          String args = joinStringsAsArguments(dc.arguments().stream().map(da -> argNames.newName(da.fieldName(), da.fieldName() + " field")));
+          modBuilder.addCode("$T $L = ($L) -> {\n$>$L$<};\n", resolveReturnType.apply(matchMethod.getParameters().get(c).asType()),
+              caseVars.get(i).get(c), args, caseBody(step, dc, innermost, argNames, newFieldValue));
+        }
+      }
+    }
+
+    // match(...) returns null if the field was left unchanged:
+    modBuilder.addCode(CodeBlock.builder()
+        .add("return $L -> {\n$>", adtArg)
+        .add("$T $L = $L.$L($L);\n", rootTypeName, modifiedVar, adtArg, rootAdt.matchMethod().element().getSimpleName(),
+            joinStringsAsArguments(caseVars.get(0).stream()))
+        .add("return $1L == null ? $2L : $1L;\n$<};\n", modifiedVar, adtArg)
+        .build());
+
+    String setterArgName = "new" + Utils.capitalize(targetField.fieldName());
+    MethodSpec.Builder setMethod = MethodSpec.methodBuilder("set" + pathName)
+        .addModifiers(Modifier.STATIC)
+        .addParameter(TypeName.get(boxedFieldType), setterArgName)
+        .returns(ParameterizedTypeName.get(ClassName.get(f1), rootTypeName, rootTypeName))
+        .addStatement("return $L(__ -> $L)", modMethodName, setterArgName);
+
+    List<MethodSpec.Builder> methods = new ArrayList<>(Arrays.asList(setMethod, modBuilder));
+    // as for field modifiers, primitive paths also get a modifier taking a function of the boxed type:
+    primitiveOperator.ifPresent(operator -> methods.add(1, MethodSpec.methodBuilder(boxedModMethodName)
+        .addModifiers(Modifier.STATIC)
+        .addParameter(ParameterizedTypeName.get(ClassName.get(f1), TypeName.get(boxedFieldType), TypeName.get(boxedFieldType)), moderArg)
+        .returns(ParameterizedTypeName.get(ClassName.get(f1), rootTypeName, rootTypeName))
+        .addStatement("return $L($L::$L)", modMethodName, moderArg, f1Apply)));
+
+    if (deriveContext.visibility() != Visibility.Smart) {
+      methods.forEach(method -> method.addModifiers(Modifier.PUBLIC));
+    }
+
+    return DerivedCodeSpec.methodSpecs(methods.stream().map(MethodSpec.Builder::build).collect(Collectors.toList()));
+  }
+
+  /**
+   * Data types with several constructors dispatched through a visitor are matched with an anonymous visitor implementation, the
+   * others with one lambda per match method parameter.
+   */
+  private static boolean fusedVisitor(AlgebraicDataType adt) {
+
+    return adt.dataConstruction().isVisitorDispatch() && (adt.dataConstruction().constructors().size() > 1);
+  }
+
+  private static Function<String, CodeBlock> nextMatch(PathStep nextStep, List<String> nextCaseVars) {
+
+    return oldValue -> CodeBlock.of("$L.$L($L)", oldValue, nextStep.adt.matchMethod().element().getSimpleName(),
+        joinStringsAsArguments(nextCaseVars.stream()));
+  }
+
+  /**
+   * Returns null if the field of the step is left unchanged, or the constructor does not have the field.
+   */
+  private static CodeBlock caseBody(PathStep step, DataConstructor dc, boolean innermost, NameAllocator argNames,
+      Function<String, CodeBlock> newFieldValue) {
+
+    if (dc.arguments().stream().noneMatch(da -> da.fieldName().equals(step.field.fieldName()))) {
+      return CodeBlock.of("return null;\n");
+    }
+
+    String oldValue = argNames.get(step.field.fieldName() + " field");
+    String newValue = argNames.newName("new" + Utils.capitalize(step.field.fieldName()), "new value");
+
+    return CodeBlock.builder()
+        .add("$T $L = $L;\n", TypeName.get(step.field.type()), newValue, newFieldValue.apply(oldValue))
+        .add("return $L ? null : $T.$L($L);\n", innermost
+                                               ? ModiersDerivator.unchangedTest(step.field.type(), newValue, oldValue)
+                                               : newValue + " == null", step.derivedClass, dc.name(), joinStringsAsArguments(dc.arguments()
+            .stream()
+            .map(da -> da.fieldName().equals(step.field.fieldName())
+                       ? newValue
+                       : argNames.get(da.fieldName() + " field"))))
+        .build();
+  }
+
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2015, Jean-Baptiste Giraudeau <jb@giraudeau.info>
+ *
+ * This file is part of "Derive4J - Annotation Processor".
+ *
+ * "Derive4J - Annotation Processor" is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * "Derive4J - Annotation Processor" is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with "Derive4J - Annotation Processor".  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.derive4j.processor.derivator;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.NameAllocator;
+import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.DoubleSupplier;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongSupplier;
+import java.util.function.LongUnaryOperator;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import org.derive4j.Make;
+import org.derive4j.Visibility;
+import org.derive4j.processor.Utils;
+import org.derive4j.processor.api.DeriveResult;
+import org.derive4j.processor.api.DeriveUtils;
+import org.derive4j.processor.api.DerivedCodeSpec;
+import org.derive4j.processor.api.model.AlgebraicDataType;
+import org.derive4j.processor.api.model.DataArgument;
+import org.derive4j.processor.api.model.DataConstructor;
+import org.derive4j.processor.api.model.DeriveContext;
+
+import static org.derive4j.processor.api.DeriveMessage.message;
+import static org.derive4j.processor.api.DeriveResult.error;
+import static org.derive4j.processor.api.DeriveResult.result;
+import static org.derive4j.processor.api.MessageLocalization.onElement;
+
+/**
+ * Derives matchInt/matchLong/matchDouble (and cataInt/cataLong/cataDouble for recursive data types), whose mappers return
+ * primitives: instances built by the derived constructors are dispatched on their implementation class and their fields read
+ * directly, so that no intermediate result is boxed.
+ */
+public final class PrimitiveMatchingDerivator {
+
+  private enum Primitive {
+    Int(TypeKind.INT, TypeName.INT, IntSupplier.class, "getAsInt", ToIntFunction.class, IntUnaryOperator.class, "applyAsInt"),
+    Long(TypeKind.LONG, TypeName.LONG, LongSupplier.class, "getAsLong", ToLongFunction.class, LongUnaryOperator.class, "applyAsLong"),
+    Double(TypeKind.DOUBLE, TypeName.DOUBLE, DoubleSupplier.class, "getAsDouble", ToDoubleFunction.class, DoubleUnaryOperator.class,
+        "applyAsDouble");
+
+    final TypeKind kind;
+    final TypeName typeName;
+    final Class<?> supplier;
+    final String supplierApply;
+    final Class<?> toFunction;
+    final Class<?> unaryOperator;
+    final String functionApply;
+
+    Primitive(TypeKind kind, TypeName typeName, Class<?> supplier, String supplierApply, Class<?> toFunction, Class<?> unaryOperator,
+        String functionApply) {
+
+      this.kind = kind;
+      this.typeName = typeName;
+      this.supplier = supplier;
+      this.supplierApply = supplierApply;
+      this.toFunction = toFunction;
+      this.unaryOperator = unaryOperator;
+      this.functionApply = functionApply;
+    }
+  }
+
+  public static DeriveResult<DerivedCodeSpec> derive(AlgebraicDataType adt, DeriveContext deriveContext, DeriveUtils deriveUtils) {
+
+    // enums are not built by derived constructors.
+    if (adt.typeConstructor().declaredType().asElement().getKind() == ElementKind.ENUM || adt.dataConstruction().constructors().isEmpty()) {
+      return result(DerivedCodeSpec.none());
+    }
+    if (adt.dataConstruction().constructors().stream().anyMatch(dc -> !dc.typeRestrictions().isEmpty())) {
+      return error(message("Primitive matching is not supported for data types with type restrictions",
+          onElement(adt.typeConstructor().typeElement())));
+    }
+
+    boolean recursive = adt.fields()
+        .stream()
+        .anyMatch(da -> deriveUtils.types().isSameType(da.type(), adt.typeConstructor().declaredType()));
+
+    return result(Stream.of(Primitive.values())
+        .flatMap(primitive -> recursive
+                              ? Stream.of(primitiveMatch(adt, primitive, false, deriveContext, deriveUtils),
+            primitiveMatch(adt, primitive, true, deriveContext, deriveUtils))
+                              : Stream.of(primitiveMatch(adt, primitive, false, deriveContext, deriveUtils)))
+        .reduce(DerivedCodeSpec.none(), DerivedCodeSpec::append));
+  }
+
+  /**
+   * @param cata if true, mappers receive the (primitive) results of the recursive fields, otherwise the fields themselves.
+   */
+  private static DerivedCodeSpec primitiveMatch(AlgebraicDataType adt, Primitive primitive, boolean cata, DeriveContext deriveContext,
+      DeriveUtils deriveUtils) {
+
+    List<DataConstructor> constructors = adt.dataConstruction().constructors();
+    TypeName adtTypeName = TypeName.get(adt.typeConstructor().declaredType());
+    List<TypeVariableName> typeVariableNames = adt.typeConstructor().typeVariables().stream().map(TypeVariableName::get).collect(
+        Collectors.toList());
+
+    NameAllocator nameAllocator = new NameAllocator();
+    constructors.forEach(dc -> nameAllocator.newName(MapperDerivator.mapperFieldName(dc), dc.name() + " mapper"));
+    String adtVar = nameAllocator.newName(Utils.uncapitalize(adt.typeConstructor().declaredType().asElement().getSimpleName()), "adt var");
+
+    CodeBlock.Builder body = CodeBlock.builder();
+    for (DataConstructor dc : constructors) {
+      ClassName implClass = Utils.getClassName(deriveContext, StrictConstructorDerivator.implClassName(adt, dc, deriveUtils));
+      TypeName implTypeName = typeVariableNames.isEmpty()
+                              ? implClass
+                              : ParameterizedTypeName.get(implClass, typeVariableNames.toArray(new TypeName[0]));
+      body.beginControlFlow("if ($L instanceof $T)", adtVar, implClass);
+      if (dc.arguments().isEmpty()) {
+        body.addStatement("return $L", mapperCall(adt, dc, primitive, cata, da -> "", deriveUtils));
+      } else {
+        String implVar = nameAllocator.clone().newName(Utils.uncapitalize(implClass.simpleName()), "impl var");
+        body.addStatement("$T $L = ($T) $L", implTypeName, implVar, implTypeName, adtVar)
+            .addStatement("return $L", mapperCall(adt, dc, primitive, cata, da -> implVar + '.' + da.fieldName(), deriveUtils));
+      }
+      body.endControlFlow();
+    }
+    if (deriveContext.makes().contains(Make.lazyConstructor)) {
+      TypeName lazyTypeName = typeVariableNames.isEmpty()
+                              ? Utils.getClassName(deriveContext, "Lazy")
+                              : ParameterizedTypeName.get(Utils.getClassName(deriveContext, "Lazy"), typeVariableNames.toArray(new TypeName[0]));
+      body.beginControlFlow("if ($L instanceof $T)", adtVar, Utils.getClassName(deriveContext, "Lazy"))
+          .addStatement("return $L((($T) $L).eval())", primitive.functionApply, lazyTypeName, adtVar)
+          .endControlFlow();
+    }
+
+    // instances that were not built by the derived constructors:
+    CodeBlock fallbackLambdas = constructors.stream().map(dc -> {
+      NameAllocator fieldNames = nameAllocator.clone();
+      List<String> params = dc.arguments()
+          .stream()
+          .map(DataArgument::fieldName)
+          .map(fn -> fieldNames.newName(fn, fn + " field"))
+          .collect(Collectors.toList());
+      return CodeBlock.builder()
+          .add("\n($L) -> $L", Utils.joinStringsAsArguments(params.stream()),
+              mapperCall(adt, dc, primitive, cata, da -> params.get(dc.arguments().indexOf(da)), deriveUtils))
+          .build();
+    }).reduce((cb1, cb2) -> CodeBlock.builder().add(cb1).add(",").add(cb2).build()).get();
+
+    body.addStatement(adt.dataConstruction().isVisitorDispatch()
+                      ? "return $L.<$T>$L($T.$L($L))"
+                      : "return $L.<$T>$L($L)", adt.dataConstruction().isVisitorDispatch()
+                                                ? new Object[] { adtVar, primitive.typeName.box(), adt.matchMethod().element().getSimpleName(),
+        ClassName.get(deriveContext.targetPackage(), deriveContext.targetClassName()), MapperDerivator.visitorLambdaFactoryName(adt),
+        fallbackLambdas }
+                                                : new Object[] { adtVar, primitive.typeName.box(), adt.matchMethod().element().getSimpleName(),
+                                                    fallbackLambdas });
+
+    TypeName functionTypeName = ParameterizedTypeName.get(ClassName.get(primitive.toFunction), adtTypeName);
+
+    TypeSpec function = TypeSpec.anonymousClassBuilder("")
+        .addSuperinterface(functionTypeName)
+        .addMethod(MethodSpec.methodBuilder(primitive.functionApply)
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .returns(primitive.typeName)
+            .addParameter(adtTypeName, adtVar)
+            .addCode(body.build())
+            .build())
+        .build();
+
+    MethodSpec.Builder method = MethodSpec.methodBuilder((cata ? "cata" : "match") + primitive.name())
+        .addModifiers(Modifier.STATIC)
+        .addTypeVariables(typeVariableNames)
+        .returns(functionTypeName)
+        .addParameters(constructors.stream()
+            .map(dc -> ParameterSpec.builder(mapperTypeName(adt, dc, primitive, cata, deriveContext, deriveUtils),
+                MapperDerivator.mapperFieldName(dc)).build())
+            .collect(Collectors.toList()))
+        .addStatement("return $L", function);
+
+    if (deriveContext.visibility() != Visibility.Smart) {
+      method.addModifiers(Modifier.PUBLIC);
+    }
+
+    return DerivedCodeSpec.codeSpec(constructors.stream()
+        .filter(dc -> needsMapperInterface(adt, dc, primitive, cata, deriveUtils))
+        .filter(dc -> !cata || recursiveArguments(adt, dc, deriveUtils).count() > 0)
+        .map(dc -> mapperInterface(adt, dc, primitive, cata, deriveUtils))
+        .collect(Collectors.toList()), method.build());
+  }
+
+  private static CodeBlock mapperCall(AlgebraicDataType adt, DataConstructor dc, Primitive primitive, boolean cata,
+      Function<DataArgument, String> fieldAccess, DeriveUtils deriveUtils) {
+
+    String apply = dc.arguments().isEmpty()
+                   ? primitive.supplierApply
+                   : (needsMapperInterface(adt, dc, primitive, cata, deriveUtils)
+                      ? dc.name()
+                      : primitive.functionApply);
+
+    return CodeBlock.builder()
+        .add("$L.$L($L)", MapperDerivator.mapperFieldName(dc), apply, Utils.joinStringsAsArguments(dc.arguments()
+            .stream()
+            .map(da -> cata && deriveUtils.types().isSameType(da.type(), adt.typeConstructor().declaredType())
+                       ? primitive.functionApply + '(' + fieldAccess.apply(da) + ')'
+                       : fieldAccess.apply(da))))
+        .build();
+  }
+
+  private static TypeName mapperTypeName(AlgebraicDataType adt, DataConstructor dc, Primitive primitive, boolean cata,
+      DeriveContext deriveContext, DeriveUtils deriveUtils) {
+
+    List<TypeMirror> argTypes = mapperArgumentTypes(adt, dc, primitive, cata, deriveUtils);
+
+    if (argTypes.isEmpty()) {
+      return ClassName.get(primitive.supplier);
+    }
+    if (!needsMapperInterface(adt, dc, primitive, cata, deriveUtils)) {
+      return argTypes.get(0).getKind() == primitive.kind
+             ? ClassName.get(primitive.unaryOperator)
+             : ParameterizedTypeName.get(ClassName.get(primitive.toFunction), TypeName.get(argTypes.get(0)));
+    }
+    ClassName mapperInterface = Utils.getClassName(deriveContext,
+        mapperInterfaceName(dc, primitive, cata && recursiveArguments(adt, dc, deriveUtils).count() > 0));
+    return dc.typeVariables().isEmpty()
+           ? mapperInterface
+           : ParameterizedTypeName.get(mapperInterface, dc.typeVariables().stream().map(TypeVariableName::get).toArray(TypeName[]::new));
+  }
+
+  private static TypeSpec mapperInterface(AlgebraicDataType adt, DataConstructor dc, Primitive primitive, boolean cata,
+      DeriveUtils deriveUtils) {
+
+    List<TypeMirror> argTypes = mapperArgumentTypes(adt, dc, primitive, cata, deriveUtils);
+
+    return TypeSpec.interfaceBuilder(mapperInterfaceName(dc, primitive, cata))
+        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+        .addTypeVariables(dc.typeVariables().stream().map(TypeVariableName::get).collect(Collectors.toList()))
+        .addMethod(MethodSpec.methodBuilder(dc.name())
+            .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+            .addParameters(dc.arguments()
+                .stream()
+                .map(da -> ParameterSpec.builder(TypeName.get(argTypes.get(dc.arguments().indexOf(da))), da.fieldName()).build())
+                .collect(Collectors.toList()))
+            .returns(primitive.typeName)
+            .build())
+        .build();
+  }
+
+  /**
+   * JDK functional interfaces are used for constructors without arguments, and for constructors with a single reference argument or a
+   * single argument of the result type. Other constructors get a dedicated mapper interface.
+   */
+  private static boolean needsMapperInterface(AlgebraicDataType adt, DataConstructor dc, Primitive primitive, boolean cata,
+      DeriveUtils deriveUtils) {
+
+    List<TypeMirror> argTypes = mapperArgumentTypes(adt, dc, primitive, cata, deriveUtils);
+
+    return argTypes.size() > 1 ||
+        (argTypes.size() == 1 && argTypes.get(0).getKind().isPrimitive() && argTypes.get(0).getKind() != primitive.kind);
+  }
+
+  private static List<TypeMirror> mapperArgumentTypes(AlgebraicDataType adt, DataConstructor dc, Primitive primitive, boolean cata,
+      DeriveUtils deriveUtils) {
+
+    return dc.arguments()
+        .stream()
+        .map(DataArgument::type)
+        .map(tm -> cata && deriveUtils.types().isSameType(tm, adt.typeConstructor().declaredType())
+                   ? deriveUtils.types().getPrimitiveType(primitive.kind)
+                   : tm)
+        .collect(Collectors.toList());
+  }
+
+  private static String mapperInterfaceName(DataConstructor dc, Primitive primitive, boolean cata) {
+
+    return Utils.capitalize(dc.name()) + "To" + primitive.name() + (cata
+                                                                    ? "Cata"
+                                                                    : "") + "Mapper";
+  }
+
+  private static Stream<DataArgument> recursiveArguments(AlgebraicDataType adt, DataConstructor dc, DeriveUtils deriveUtils) {
+
+    return dc.arguments().stream().filter(da -> deriveUtils.types().isSameType(da.type(), adt.typeConstructor().declaredType()));
+  }
+
+}
@@ -19,18 +19,29 @@
 package org.derive4j.processor.derivator;
 
 import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.NameAllocator;
 import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
 import com.squareup.javapoet.TypeVariableName;
+import com.squareup.javapoet.WildcardTypeName;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import javax.lang.model.element.ElementKind;
@@ -46,6 +57,7 @@ import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.TypeKindVisitor7;
 import org.derive4j.ArgOption;
 import org.derive4j.Data;
+import org.derive4j.Make;
 import org.derive4j.Visibility;
 import org.derive4j.processor.Utils;
 import org.derive4j.processor.api.DeriveResult;
@@ -61,8 +73,11 @@ import org.derive4j.processor.api.model.TypeRestriction;
 
 import static org.derive4j.processor.Utils.joinStrings;
 import static org.derive4j.processor.Utils.optionalAsStream;
+import static org.derive4j.processor.api.DeriveMessage.message;
+import static org.derive4j.processor.api.DeriveResult.error;
 import static org.derive4j.processor.api.DeriveResult.result;
 import static org.derive4j.processor.api.DerivedCodeSpec.none;
+import static org.derive4j.processor.api.MessageLocalization.onElement;
 
 public final class StrictConstructorDerivator {
 
@@ -73,6 +88,15 @@ public final class StrictConstructorDerivator {
       643, 647, 653, 659, 661, 673, 677, 683, 691, 701, 709, 719, 727, 733, 739, 743, 751, 757, 761, 769, 773, 787, 797, 809, 811, 821, 823, 827, 829,
       839, 853, 857, 859, 863, 877, 881, 883, 887, 907, 911, 919, 929, 937, 941, 947, 953, 967, 971, 977, 983, 991, 997);
 
+  private static final String INTERN_TABLE_CLASS = "InternTable";
+  private static final String INTERN_TABLE_FIELD = "internTable";
+  private static final String STRUCTURAL = "Structural";
+  private static final String APPEND_TO = "appendTo";
+  private static final String STACK_SAFE_EQUALS = "stackSafeEquals";
+  private static final String STACK_SAFE_HASH_CODE = "stackSafeHashCode";
+  private static final String HASH_MARK = "HASH_MARK";
+  private static final int TO_STRING_FIELD_LENGTH = 16;
+
   public static DeriveResult<DerivedCodeSpec> derive(AlgebraicDataType adt, DeriveContext deriveContext, DeriveUtils deriveUtils) {
 
     DerivedCodeSpec codeSpec;
@@ -80,6 +104,11 @@ public final class StrictConstructorDerivator {
     if (adt.typeConstructor().declaredType().asElement().getKind() == ElementKind.ENUM) {
       codeSpec = none();
     } else {
+      if (hasArgOption(adt, ArgOption.interned) && !(findAbstractEquals(deriveUtils, adt.typeConstructor().typeElement()).isPresent() &&
+          findAbstractHashCode(deriveUtils, adt.typeConstructor().typeElement()).isPresent())) {
+        return error(message("Interned data types must declare equals and hashCode as abstract methods",
+            onElement(adt.typeConstructor().typeElement())));
+      }
       codeSpec = DataConstructions.cases()
           .multipleConstructors(constructors -> constructors.constructors()
               .stream()
@@ -88,6 +117,16 @@ public final class StrictConstructorDerivator {
           .oneConstructor(constructor -> constructorSpec(adt, constructor, deriveContext, deriveUtils))
           .noConstructor(DerivedCodeSpec::none)
           .apply(adt.dataConstruction());
+      if (hasArgOption(adt, ArgOption.interned)) {
+        codeSpec = codeSpec.append(internTableSpec(deriveContext));
+      }
+      if (!adt.dataConstruction().constructors().isEmpty()) {
+        codeSpec = codeSpec.append(structuralSpec(adt, deriveContext, deriveUtils));
+      }
+      if (ConstructorTagDerivator.hasTaggedImplementations(adt, deriveContext)) {
+        codeSpec = codeSpec.append(DerivedCodeSpec.codeSpec(Collections.singletonList(ConstructorTagDerivator.taggedInterface()),
+            Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), Collections.emptyList()));
+      }
     }
 
     return result(codeSpec);
@@ -119,14 +158,7 @@ public final class StrictConstructorDerivator {
       constructorBuilder.addStatement("this.$N = $N", argument.fieldName(), argument.fieldName());
     }
 
-    NameAllocator nameAllocator = new NameAllocator();
-    nameAllocator.newName(adt.typeConstructor().declaredType().asElement().getSimpleName().toString(), "Type Element");
-    constructor.arguments()
-        .stream()
-        .filter(da -> da.type().getKind() == TypeKind.DECLARED)
-        .forEach(da -> nameAllocator.newName(deriveUtils.types().asElement(da.type()).getSimpleName().toString(), da.fieldName()));
-
-    String className = nameAllocator.newName(Utils.capitalize(constructor.name()), "Impl Element");
+    String className = implClassName(adt, constructor, deriveUtils);
     TypeSpec.Builder typeSpecBuilder = TypeSpec.classBuilder(className)
         .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
         .addTypeVariables(typeVariableNames)
@@ -146,9 +178,48 @@ public final class StrictConstructorDerivator {
       typeSpecBuilder.superclass(constructedType);
     }
 
-    typeSpecBuilder.addMethods(optionalAsStream(deriveEquals(adt, constructor, deriveContext, deriveUtils)).collect(Collectors.toList()));
-    typeSpecBuilder.addMethods(optionalAsStream(deriveHashCode(adt, constructor, deriveContext, deriveUtils)).collect(Collectors.toList()));
-    typeSpecBuilder.addMethods(optionalAsStream(deriveToString(adt, constructor, deriveContext, deriveUtils)).collect(Collectors.toList()));
+    typeSpecBuilder.addSuperinterface(ConstructorTagDerivator.taggedClassName(deriveContext))
+        .addMethod(ConstructorTagDerivator.taggedMethodBuilder().addStatement("return $L", constructorIndex(adt, constructor)).build());
+
+    Optional<String> hashCacheField = cachedHashCodeField(adt, constructor, deriveUtils);
+    typeSpecBuilder.addFields(optionalAsStream(hashCacheField.map(fieldName -> FieldSpec.builder(TypeName.INT, fieldName, Modifier.PRIVATE).build()))
+        .collect(Collectors.toList()));
+
+    // Values of recursive data types are compared, hashed and printed by loops over an explicit stack (see structuralSpec),
+    // that each constructor class drives through the Structural interface:
+    boolean recursive = isRecursive(adt, deriveUtils);
+    boolean stackSafe = recursive && constructor.arguments().stream().anyMatch(da -> isSelfReference(adt, da, deriveUtils));
+    TypeElement typeElement = adt.typeConstructor().typeElement();
+    if (findAbstractToString(deriveUtils, typeElement).isPresent() ||
+        (recursive && (findAbstractEquals(deriveUtils, typeElement).isPresent() || findAbstractHashCode(deriveUtils, typeElement).isPresent()))) {
+      typeSpecBuilder.addSuperinterface(Utils.getClassName(deriveContext, STRUCTURAL));
+    }
+
+    Optional<MethodSpec> equals = deriveEquals(adt, constructor, className, typeVariableNames, hashCacheField, stackSafe, deriveContext,
+        deriveUtils);
+    typeSpecBuilder.addMethods(optionalAsStream(equals).collect(Collectors.toList()));
+    if (recursive && equals.isPresent()) {
+      typeSpecBuilder.addMethod(deriveEqualFields(adt, constructor, implTypeName(deriveContext, className, typeVariableNames), hashCacheField,
+          deriveUtils));
+    }
+    Optional<MethodSpec> hashCode = deriveHashCode(adt, constructor, hashCacheField, stackSafe, deriveContext, deriveUtils);
+    typeSpecBuilder.addMethods(optionalAsStream(hashCode).collect(Collectors.toList()));
+    if (recursive && hashCode.isPresent()) {
+      typeSpecBuilder.addMethods(deriveHashFields(adt, constructor, hashCacheField, deriveContext, deriveUtils));
+    }
+    Optional<MethodSpec> toStringMethod = deriveToString(adt, constructor, deriveContext, deriveUtils);
+    toStringMethod.ifPresent(toString -> typeSpecBuilder.addMethod(recursive
+                                                                    ? deriveStackSafeAppendTo(adt, constructor, deriveUtils)
+                                                                    : deriveAppendTo(adt, constructor, deriveContext, deriveUtils))
+        .addMethod(toString.toBuilder()
+            // sized for the constructor name, parentheses and short fields: larger values are resized as usual.
+            .addStatement("$T sb = new $T($L)", StringBuilder.class, StringBuilder.class,
+                constructor.name().length() + 2 + (TO_STRING_FIELD_LENGTH * constructor.arguments().size()))
+            .addCode(recursive
+                     ? CodeBlock.builder().addStatement("$T.$L(this, sb)", targetClassName(deriveContext), APPEND_TO).build()
+                     : CodeBlock.builder().addStatement("$L(sb)", APPEND_TO).build())
+            .addStatement("return sb.toString()")
+            .build()));
 
     MethodSpec.Builder factory = MethodSpec.methodBuilder(constructor.name())
         .addModifiers(Modifier.STATIC)
@@ -160,7 +231,7 @@ public final class StrictConstructorDerivator {
         .varargs(constructor.deconstructor().visitorMethod().isVarArgs())
         .returns(constructedType);
 
-    if (Arrays.asList(adt.typeConstructor().typeElement().getAnnotation(Data.class).arguments()).contains(ArgOption.checkedNotNull)) {
+    if (hasArgOption(adt, ArgOption.checkedNotNull)) {
       for (DataArgument argument : constructor.arguments()) {
         factory.addStatement("if ($1L == null) throw new NullPointerException(\"$1L must not be null\")", argument.fieldName());
       }
@@ -189,22 +260,166 @@ public final class StrictConstructorDerivator {
               .addStatement("return _$L", constructor.name())
               .build());
     } else {
-      result = DerivedCodeSpec.codeSpec(typeSpecBuilder.build(), factory.addStatement("return new $L$L($L)", className, typeVariableNames.isEmpty()
-                                                                                                                        ? ""
-                                                                                                                        : "<>",
-          Utils.asArgumentsString(constructor.arguments())).build());
+      CodeBlock newInstance = CodeBlock.builder().add("new $L$L($L)", className, typeVariableNames.isEmpty()
+                                                                             ? ""
+                                                                             : "<>", Utils.asArgumentsString(constructor.arguments())).build();
+      if (hasArgOption(adt, ArgOption.interned)) {
+        factory.addStatement("return $L.intern($L)", INTERN_TABLE_FIELD, newInstance);
+      } else {
+        factory.addStatement("return $L", newInstance);
+      }
+      result = DerivedCodeSpec.codeSpec(typeSpecBuilder.build(), factory.build());
     }
 
     return result;
 
   }
 
-  private static Optional<MethodSpec> deriveEquals(AlgebraicDataType adt, DataConstructor constructor, DeriveContext deriveContext,
+  static String implClassName(AlgebraicDataType adt, DataConstructor constructor, DeriveUtils deriveUtils) {
+
+    NameAllocator nameAllocator = new NameAllocator();
+    nameAllocator.newName(adt.typeConstructor().declaredType().asElement().getSimpleName().toString(), "Type Element");
+    constructor.arguments()
+        .stream()
+        .filter(da -> da.type().getKind() == TypeKind.DECLARED)
+        .forEach(da -> nameAllocator.newName(deriveUtils.types().asElement(da.type()).getSimpleName().toString(), da.fieldName()));
+
+    return nameAllocator.newName(Utils.capitalize(constructor.name()), "Impl Element");
+  }
+
+  private static DerivedCodeSpec internTableSpec(DeriveContext deriveContext) {
+
+    TypeName stripeType = ParameterizedTypeName.get(ClassName.get(WeakHashMap.class), ClassName.OBJECT,
+        ParameterizedTypeName.get(ClassName.get(WeakReference.class), ClassName.OBJECT));
+    TypeVariableName t = TypeVariableName.get("T");
+
+    TypeSpec internTable = TypeSpec.classBuilder(INTERN_TABLE_CLASS)
+        .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+        .addField(FieldSpec.builder(ArrayTypeName.of(stripeType), "stripes", Modifier.PRIVATE, Modifier.FINAL).build())
+        .addField(FieldSpec.builder(LongAdder.class, "hits", Modifier.PRIVATE, Modifier.FINAL).initializer("new $T()", LongAdder.class).build())
+        .addField(FieldSpec.builder(LongAdder.class, "misses", Modifier.PRIVATE, Modifier.FINAL).initializer("new $T()", LongAdder.class).build())
+        .addMethod(MethodSpec.constructorBuilder()
+            .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "{$S, $S}", "rawtypes", "unchecked").build())
+            // power of two number of stripes, so that a stripe is selected by masking the hash code:
+            .addStatement("this.stripes = new $T[$T.highestOneBit($T.getRuntime().availableProcessors() * 4)]", WeakHashMap.class, Integer.class,
+                Runtime.class)
+            .beginControlFlow("for (int i = 0; i < this.stripes.length; i++)")
+            .addStatement("this.stripes[i] = new $T<>()", WeakHashMap.class)
+            .endControlFlow()
+            .build())
+        .addMethod(MethodSpec.methodBuilder("intern")
+            .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build())
+            .addTypeVariable(t)
+            .addParameter(t, "value")
+            .returns(t)
+            .addStatement("int h = value.hashCode()")
+            .addStatement("$T stripe = this.stripes[(h ^ (h >>> 16)) & (this.stripes.length - 1)]", stripeType)
+            .beginControlFlow("synchronized (stripe)")
+            .addStatement("$T canonicalRef = stripe.get(value)", ParameterizedTypeName.get(ClassName.get(WeakReference.class), ClassName.OBJECT))
+            .addStatement("$T canonical = canonicalRef == null ? null : canonicalRef.get()", Object.class)
+            .beginControlFlow("if (canonical != null)")
+            .addStatement("this.hits.increment()")
+            .addStatement("return ($T) canonical", t)
+            .endControlFlow()
+            // values are weakly referenced too, otherwise they would keep their own keys alive:
+            .addStatement("stripe.put(value, new $T<>(value))", WeakReference.class)
+            .endControlFlow()
+            .addStatement("this.misses.increment()")
+            .addStatement("return value")
+            .build())
+        .addMethod(MethodSpec.methodBuilder("hitRate")
+            .returns(TypeName.DOUBLE)
+            .addStatement("long hits = this.hits.sum()")
+            .addStatement("long lookups = hits + this.misses.sum()")
+            .addStatement("return lookups == 0 ? 0 : (double) hits / lookups")
+            .build())
+        .addMethod(MethodSpec.methodBuilder("size")
+            .returns(TypeName.INT)
+            .addStatement("int size = 0")
+            .beginControlFlow("for ($T stripe : this.stripes)", stripeType)
+            .beginControlFlow("synchronized (stripe)")
+            .addStatement("size += stripe.size()")
+            .endControlFlow()
+            .endControlFlow()
+            .addStatement("return size")
+            .build())
+        .build();
+
+    MethodSpec.Builder hitRate = MethodSpec.methodBuilder("internTableHitRate")
+        .addModifiers(Modifier.STATIC)
+        .returns(TypeName.DOUBLE)
+        .addStatement("return $L.hitRate()", INTERN_TABLE_FIELD);
+
+    MethodSpec.Builder size = MethodSpec.methodBuilder("internTableSize")
+        .addModifiers(Modifier.STATIC)
+        .returns(TypeName.INT)
+        .addStatement("return $L.size()", INTERN_TABLE_FIELD);
+
+    if (deriveContext.visibility() != Visibility.Smart) {
+      hitRate.addModifiers(Modifier.PUBLIC);
+      size.addModifiers(Modifier.PUBLIC);
+    }
+
+    return DerivedCodeSpec.codeSpec(Collections.singletonList(internTable), Collections.singletonList(
+        FieldSpec.builder(Utils.getClassName(deriveContext, INTERN_TABLE_CLASS), INTERN_TABLE_FIELD, Modifier.PRIVATE, Modifier.STATIC,
+            Modifier.FINAL).initializer("new $L()", INTERN_TABLE_CLASS).build()), Arrays.asList(hitRate.build(), size.build()),
+        Collections.emptyList(), Collections.emptyList());
+  }
+
+  static boolean hasArgOption(AlgebraicDataType adt, ArgOption argOption) {
+
+    return Arrays.asList(adt.typeConstructor().typeElement().getAnnotation(Data.class).arguments()).contains(argOption);
+  }
+
+  private static Optional<String> cachedHashCodeField(AlgebraicDataType adt, DataConstructor constructor, DeriveUtils deriveUtils) {
+
+    // nullary constructors are singletons: nothing to gain by caching their constant hash code.
+    // Interning implies hash caching, as each interned instance is hashed at least once.
+    if (!(hasArgOption(adt, ArgOption.cachedHashCode) || hasArgOption(adt, ArgOption.interned)) || constructor.arguments().isEmpty() ||
+        !findAbstractHashCode(deriveUtils, adt.typeConstructor().typeElement()).isPresent()) {
+      return Optional.empty();
+    }
+    NameAllocator nameAllocator = new NameAllocator();
+    constructor.arguments().forEach(da -> nameAllocator.newName(da.fieldName(), da.fieldName() + " field"));
+    return Optional.of(nameAllocator.newName("hash", "hash cache field"));
+  }
+
+  private static Optional<MethodSpec> deriveEquals(AlgebraicDataType adt, DataConstructor constructor, String className,
+      List<TypeVariableName> typeVariableNames, Optional<String> hashCacheField, boolean stackSafe, DeriveContext deriveContext,
       DeriveUtils deriveUtils) {
 
     return findAbstractEquals(deriveUtils, adt.typeConstructor().typeElement()).map(abstractEquals -> {
       VariableElement objectParam = abstractEquals.getParameters().get(0);
 
+      NameAllocator nameAllocator = new NameAllocator();
+      nameAllocator.newName(objectParam.getSimpleName().toString(), "equals parameter");
+      constructor.arguments().forEach(da -> nameAllocator.newName(da.fieldName(), da.fieldName() + " field"));
+      String otherVarName = nameAllocator.newName("other", "other instance");
+
+      // Direct path: same implementation class, compare fields without going through match:
+      TypeName implTypeName = implTypeName(deriveContext, className, typeVariableNames);
+      CodeBlock.Builder directEquality = CodeBlock.builder()
+          .beginControlFlow("if (this == $L)", objectParam.getSimpleName())
+          .addStatement("return true")
+          .endControlFlow()
+          .beginControlFlow("if ($L instanceof $L)", objectParam.getSimpleName(), className);
+      if (constructor.arguments().isEmpty()) {
+        directEquality.addStatement("return true");
+      } else if (stackSafe) {
+        directEquality.addStatement("return $T.$L(this, $L)", targetClassName(deriveContext), STACK_SAFE_EQUALS, objectParam.getSimpleName());
+      } else {
+        directEquality.addStatement("$1T $2L = ($1T) $3L", implTypeName, otherVarName, objectParam.getSimpleName());
+        // reject early if both hash codes are already known to differ:
+        hashCacheField.ifPresent(hash -> directEquality.beginControlFlow("if (this.$1L != 0 && $2L.$1L != 0 && this.$1L != $2L.$1L)", hash,
+            otherVarName).addStatement("return false").endControlFlow());
+        directEquality.addStatement("return $L", constructor.arguments()
+                .stream()
+                .map(da -> equalityTest(da, otherVarName + '.' + da.fieldName()))
+                .reduce((s1, s2) -> s1 + " && " + s2)
+                .get());
+      }
+      directEquality.endControlFlow();
+
       CodeBlock lambdas = adt.dataConstruction()
           .constructors()
           .stream()
@@ -212,8 +427,8 @@ public final class StrictConstructorDerivator {
               .add("($L) -> $L", Utils.asLambdaParametersString(c.arguments(), c.typeRestrictions()), c.name().equals(constructor.name())
                                                                                                       ? constructor.arguments()
                                                                                                           .stream()
-                                                                                                          .map(
-                                                                                                              StrictConstructorDerivator::equalityTest)
+                                                                                                          .map(da -> equalityTest(da,
+                                                                                                              da.fieldName()))
                                                                                                           .reduce((s1, s2) -> s1 + " && " + s2)
                                                                                                           .orElse("true")
                                                                                                       : "false")
@@ -221,7 +436,7 @@ public final class StrictConstructorDerivator {
           .reduce((cb1, cb2) -> CodeBlock.builder().add(cb1).add(",\n").add(cb2).build())
           .orElse(CodeBlock.builder().build());
 
-      MethodSpec.Builder equalBuilder = deriveUtils.overrideMethodBuilder(abstractEquals, constructor.returnedType());
+      MethodSpec.Builder equalBuilder = deriveUtils.overrideMethodBuilder(abstractEquals, constructor.returnedType()).addCode(directEquality.build());
       if (!adt.typeConstructor().typeVariables().isEmpty()) {
         equalBuilder.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build());
       }
@@ -265,21 +480,25 @@ public final class StrictConstructorDerivator {
     });
   }
 
-  private static Optional<MethodSpec> deriveHashCode(AlgebraicDataType adt, DataConstructor constructor, DeriveContext deriveContext,
-      DeriveUtils deriveUtils) {
+  private static Optional<MethodSpec> deriveHashCode(AlgebraicDataType adt, DataConstructor constructor, Optional<String> hashCacheField,
+      boolean stackSafe, DeriveContext deriveContext, DeriveUtils deriveUtils) {
 
-    int nbConstructors = adt.dataConstruction().constructors().size();
-    int constructorIndex = IntStream.range(0, nbConstructors)
-        .filter(i -> adt.dataConstruction().constructors().get(i).name().equals(constructor.name()))
-        .findFirst()
-        .getAsInt();
+    String hashExpression = stackSafe
+                            ? targetClassName(deriveContext).simpleName() + '.' + STACK_SAFE_HASH_CODE + "(this)"
+                            : hashExpression(adt, constructor, StrictConstructorDerivator::hascode);
 
     return findAbstractHashCode(deriveUtils, adt.typeConstructor().typeElement()).map(
-        abstractHashCode -> deriveUtils.overrideMethodBuilder(abstractHashCode, constructor.returnedType())
-            .addStatement("return $L$L$L", IntStream.range(0, constructor.arguments().size() - 1).mapToObj(__ -> "(").collect(Collectors.joining()),
-                PRIMES.get(constructorIndex),
-                joinStrings(constructor.arguments().stream().map(da -> " + " + hascode(da)), ") * " + PRIMES.get(constructorIndex)))
-            .build());
+        abstractHashCode -> hashCacheField.map(hash -> deriveUtils.overrideMethodBuilder(abstractHashCode, constructor.returnedType())
+            // racy single-check: concurrent threads may compute the same value, zero means "not yet computed".
+            .addStatement("int $1L = this.$1L", hash)
+            .beginControlFlow("if ($L == 0)", hash)
+            .addStatement("this.$1L = $1L = $2L", hash, hashExpression)
+            .endControlFlow()
+            .addStatement("return $L", hash)
+            .build())
+            .orElseGet(() -> deriveUtils.overrideMethodBuilder(abstractHashCode, constructor.returnedType())
+                .addStatement("return $L", hashExpression)
+                .build()));
 
   }
 
@@ -287,19 +506,401 @@ public final class StrictConstructorDerivator {
       DeriveUtils deriveUtils) {
 
     return findAbstractToString(deriveUtils, adt.typeConstructor().typeElement()).map(abstractToString -> {
-      MethodSpec.Builder methodBuilder = deriveUtils.overrideMethodBuilder(abstractToString, constructor.returnedType());
-      if (constructor.arguments().isEmpty()) {
-        methodBuilder.addStatement("return \"$L()\"", constructor.name());
+      return deriveUtils.overrideMethodBuilder(abstractToString, constructor.returnedType()).build();
+    });
+  }
+
+  /**
+   * Appends the fields to a single builder: nested values of the data type are appended in place rather than through their toString,
+   * so that the characters of deep values are not copied again at each level.
+   */
+  private static MethodSpec deriveAppendTo(AlgebraicDataType adt, DataConstructor constructor, DeriveContext deriveContext,
+      DeriveUtils deriveUtils) {
+
+    MethodSpec.Builder appendTo = MethodSpec.methodBuilder(APPEND_TO)
+        .addAnnotation(Override.class)
+        .addModifiers(Modifier.PUBLIC)
+        .addParameter(StringBuilder.class, "sb");
+    if (constructor.arguments().isEmpty()) {
+      return appendTo.addStatement("sb.append($S)", constructor.name() + "()").build();
+    }
+    appendTo.addStatement("sb.append($S)", constructor.name() + '(');
+    for (DataArgument da : constructor.arguments()) {
+      if (da != constructor.arguments().get(0)) {
+        appendTo.addStatement("sb.append($S)", ", ");
+      }
+      if (isSelfReference(adt, da, deriveUtils)) {
+        appendTo.addStatement("$T.$L(this.$L, sb)", targetClassName(deriveContext), APPEND_TO, da.fieldName());
+      } else {
+        appendTo.addStatement("sb.append($L)", toString(da));
+      }
+    }
+    return appendTo.addStatement("sb.append(')')").build();
+  }
+
+  /**
+   * Same as deriveAppendTo, except that values of the data type (and the parts that follow them) are pushed on the pending stack of
+   * the static appendTo loop, rather than appended recursively.
+   */
+  private static MethodSpec deriveStackSafeAppendTo(AlgebraicDataType adt, DataConstructor constructor, DeriveUtils deriveUtils) {
+
+    MethodSpec.Builder appendTo = MethodSpec.methodBuilder(APPEND_TO)
+        .addAnnotation(Override.class)
+        .addModifiers(Modifier.PUBLIC)
+        .addParameter(StringBuilder.class, "sb")
+        .addParameter(pendingType(), "pending");
+    if (constructor.arguments().isEmpty()) {
+      return appendTo.addStatement("sb.append($S)", constructor.name() + "()").build();
+    }
+
+    // the parts of the string: literals and fields.
+    List<Object> parts = new ArrayList<>();
+    parts.add(constructor.name() + '(');
+    for (DataArgument da : constructor.arguments()) {
+      if (da != constructor.arguments().get(0)) {
+        parts.add(", ");
+      }
+      parts.add(da);
+    }
+    parts.add(")");
+
+    int firstSelfReference = IntStream.range(0, parts.size())
+        .filter(i -> parts.get(i) instanceof DataArgument && isSelfReference(adt, (DataArgument) parts.get(i), deriveUtils))
+        .findFirst()
+        .orElse(parts.size());
+    for (Object part : parts.subList(0, firstSelfReference)) {
+      appendTo.addStatement("sb.append($L)", part instanceof DataArgument
+                                             ? toString((DataArgument) part)
+                                             : CodeBlock.builder().add("$S", part).build());
+    }
+
+    // the other parts are pushed in reverse order, consecutive parts other than values of the data type being concatenated:
+    List<CodeBlock> pushed = new ArrayList<>();
+    List<CodeBlock> concatenation = new ArrayList<>();
+    for (Object part : parts.subList(firstSelfReference, parts.size())) {
+      if (part instanceof DataArgument && isSelfReference(adt, (DataArgument) part, deriveUtils)) {
+        if (!concatenation.isEmpty()) {
+          pushed.add(CodeBlock.builder().add(joinStrings(concatenation.stream().map(CodeBlock::toString), " + ")).build());
+          concatenation.clear();
+        }
+        pushed.add(CodeBlock.builder().add("this.$1L != null ? this.$1L : $2S", ((DataArgument) part).fieldName(), "null").build());
       } else {
-        methodBuilder.addStatement("return $S + $L + $S", constructor.name() + '(',
-            joinStrings(constructor.arguments().stream().map(StrictConstructorDerivator::toString), " + \", \" + "), ")");
+        concatenation.add(part instanceof DataArgument
+                          ? CodeBlock.builder().add(toString((DataArgument) part)).build()
+                          : CodeBlock.builder().add("$S", part).build());
+      }
+    }
+    if (!concatenation.isEmpty()) {
+      pushed.add(CodeBlock.builder().add(joinStrings(concatenation.stream().map(CodeBlock::toString), " + ")).build());
+    }
+    Collections.reverse(pushed);
+    pushed.forEach(part -> appendTo.addStatement("pending.push($L)", part));
+    return appendTo.build();
+  }
+
+  /**
+   * Compares the fields other than values of the data type, then pushes the pairs of those values on the pending stack of
+   * stackSafeEquals. The other value is of the same class.
+   */
+  private static MethodSpec deriveEqualFields(AlgebraicDataType adt, DataConstructor constructor, TypeName implTypeName,
+      Optional<String> hashCacheField, DeriveUtils deriveUtils) {
+
+    MethodSpec.Builder equalFields = MethodSpec.methodBuilder("equalFields")
+        .addAnnotation(Override.class)
+        .addModifiers(Modifier.PUBLIC)
+        .addParameter(Object.class, "obj")
+        .addParameter(pendingType(), "pending")
+        .returns(TypeName.BOOLEAN);
+    if (constructor.arguments().isEmpty()) {
+      return equalFields.addStatement("return true").build();
+    }
+
+    equalFields.addStatement("$1T other = ($1T) obj", implTypeName);
+    hashCacheField.ifPresent(hash -> equalFields.beginControlFlow("if (this.$1L != 0 && other.$1L != 0 && this.$1L != other.$1L)", hash)
+        .addStatement("return false")
+        .endControlFlow());
+    constructor.arguments()
+        .stream()
+        .filter(da -> !isSelfReference(adt, da, deriveUtils))
+        .map(da -> equalityTest(da, "other." + da.fieldName()))
+        .reduce((s1, s2) -> s1 + " && " + s2)
+        .ifPresent(test -> equalFields.beginControlFlow("if (!($L))", test).addStatement("return false").endControlFlow());
+    constructor.arguments().stream().filter(da -> isSelfReference(adt, da, deriveUtils)).forEach(da -> equalFields
+        .beginControlFlow("if (this.$1L != other.$1L)", da.fieldName())
+        .beginControlFlow("if (this.$1L == null || other.$1L == null)", da.fieldName())
+        .addStatement("return false")
+        .endControlFlow()
+        .addStatement("pending.push(other.$L)", da.fieldName())
+        .addStatement("pending.push(this.$L)", da.fieldName())
+        .endControlFlow());
+    return equalFields.addStatement("return true").build();
+  }
+
+  /**
+   * pushFields pushes the values of the data type that the hash code depends on, unless it is already known, and hashFields computes
+   * it from their hash codes, found on top of the hashes stack of stackSafeHashCode.
+   */
+  private static List<MethodSpec> deriveHashFields(AlgebraicDataType adt, DataConstructor constructor, Optional<String> hashCacheField,
+      DeriveContext deriveContext, DeriveUtils deriveUtils) {
 
+    List<DataArgument> selfReferences = constructor.arguments()
+        .stream()
+        .filter(da -> isSelfReference(adt, da, deriveUtils))
+        .collect(Collectors.toList());
+
+    MethodSpec.Builder pushFields = MethodSpec.methodBuilder("pushFields")
+        .addAnnotation(Override.class)
+        .addModifiers(Modifier.PUBLIC)
+        .addParameter(pendingType(), "pending")
+        .returns(TypeName.BOOLEAN);
+    if (selfReferences.isEmpty()) {
+      pushFields.addStatement("return false");
+    } else {
+      hashCacheField.ifPresent(hash -> pushFields.beginControlFlow("if (this.$L != 0)", hash).addStatement("return false").endControlFlow());
+      pushFields.addStatement("pending.push(this)").addStatement("pending.push($T.$L)", targetClassName(deriveContext), HASH_MARK);
+      for (int i = selfReferences.size() - 1; i >= 0; i--) {
+        pushFields.addStatement("pending.push(this.$L)", selfReferences.get(i).fieldName());
       }
-      return methodBuilder.build();
-    });
+      pushFields.addStatement("return true");
+    }
+
+    String hashExpression = hashExpression(adt, constructor, da -> selfReferences.contains(da)
+                                                                   ? "hashes[base" + (selfReferences.indexOf(da) == 0
+                                                                                      ? ""
+                                                                                      : " + " + selfReferences.indexOf(da)) + ']'
+                                                                   : hascode(da));
+    MethodSpec hashFields = MethodSpec.methodBuilder("hashFields")
+        .addAnnotation(Override.class)
+        .addModifiers(Modifier.PUBLIC)
+        .addParameter(int[].class, "hashes")
+        .addParameter(TypeName.INT, "size")
+        .returns(TypeName.INT)
+        .addStatement("int base = size - $L", selfReferences.size())
+        .addStatement("$Lhashes[base] = $L", hashCacheField.map(hash -> "this." + hash + " = ").orElse(""), hashExpression)
+        .addStatement("return base + 1")
+        .build();
+
+    return Arrays.asList(pushFields.build(), hashFields);
+  }
+
+  /**
+   * The Structural interface implemented by the constructor classes, and the static appendTo. For recursive data types, equals,
+   * hashCode and toString are loops over an explicit stack of pending values, so that deep values do not overflow the call stack.
+   */
+  private static DerivedCodeSpec structuralSpec(AlgebraicDataType adt, DeriveContext deriveContext, DeriveUtils deriveUtils) {
+
+    TypeElement typeElement = adt.typeConstructor().typeElement();
+    boolean recursive = isRecursive(adt, deriveUtils);
+    boolean toString = findAbstractToString(deriveUtils, typeElement).isPresent();
+    boolean equals = recursive && findAbstractEquals(deriveUtils, typeElement).isPresent();
+    boolean hashCode = recursive && findAbstractHashCode(deriveUtils, typeElement).isPresent();
+    if (!(toString || equals || hashCode)) {
+      return none();
+    }
+
+    Optional<ClassName> lazyClassName = deriveContext.makes().contains(Make.lazyConstructor)
+                                        ? Optional.of(Utils.getClassName(deriveContext, "Lazy"))
+                                        : Optional.empty();
+    Optional<TypeName> lazyTypeName = lazyClassName.map(lazy -> adt.typeConstructor().typeVariables().isEmpty()
+                                                                ? lazy
+                                                                : ParameterizedTypeName.get(lazy, adt.typeConstructor()
+                                                                    .typeVariables()
+                                                                    .stream()
+                                                                    .map(__ -> WildcardTypeName.subtypeOf(Object.class))
+                                                                    .toArray(TypeName[]::new)));
+
+    TypeSpec.Builder structural = TypeSpec.interfaceBuilder(STRUCTURAL).addModifiers(Modifier.PRIVATE);
+    List<FieldSpec> fields = new ArrayList<>();
+    List<MethodSpec> methods = new ArrayList<>();
+
+    if (toString) {
+      MethodSpec.Builder appendToFields = MethodSpec.methodBuilder(APPEND_TO)
+          .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+          .addParameter(StringBuilder.class, "sb");
+      String adtVar = Utils.uncapitalize(typeElement.getSimpleName());
+      MethodSpec.Builder appendTo = MethodSpec.methodBuilder(APPEND_TO)
+          .addModifiers(Modifier.STATIC)
+          .addParameter(wildcardTypeName(adt), adtVar)
+          .addParameter(StringBuilder.class, "sb")
+          .returns(StringBuilder.class);
+      if (recursive) {
+        appendToFields.addParameter(pendingType(), "pending");
+        // pending parts are either values of the data type or strings:
+        appendTo.addStatement("$T pending = new $T<>()", pendingType(), ArrayDeque.class)
+            .beginControlFlow("for ($T next = $L; ; next = pending.pop())", Object.class, adtVar);
+        lazyTypeName.ifPresent(lazy -> appendTo.beginControlFlow("if (next instanceof $T)", lazyClassName.get())
+            .addStatement("next = (($T) next).eval()", lazy)
+            .endControlFlow());
+        appendTo.beginControlFlow("if (next instanceof $L)", STRUCTURAL)
+            .addStatement("(($L) next).$L(sb, pending)", STRUCTURAL, APPEND_TO)
+            .nextControlFlow("else")
+            .addStatement("sb.append(next)")
+            .endControlFlow()
+            .beginControlFlow("if (pending.isEmpty())")
+            .addStatement("return sb")
+            .endControlFlow()
+            .endControlFlow();
+      } else {
+        appendTo.beginControlFlow("if ($L instanceof $L)", adtVar, STRUCTURAL).addStatement("(($L) $L).$L(sb)", STRUCTURAL, adtVar, APPEND_TO);
+        lazyTypeName.ifPresent(lazy -> appendTo.nextControlFlow("else if ($L instanceof $T)", adtVar, lazyClassName.get())
+            .addStatement("$L((($T) $L).eval(), sb)", APPEND_TO, lazy, adtVar));
+        appendTo.nextControlFlow("else").addStatement("sb.append($L)", adtVar).endControlFlow().addStatement("return sb");
+      }
+      if (deriveContext.visibility() != Visibility.Smart) {
+        appendTo.addModifiers(Modifier.PUBLIC);
+      }
+      structural.addMethod(appendToFields.build());
+      methods.add(appendTo.build());
+    }
+
+    if (equals) {
+      structural.addMethod(MethodSpec.methodBuilder("equalFields")
+          .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+          .addParameter(Object.class, "obj")
+          .addParameter(pendingType(), "pending")
+          .returns(TypeName.BOOLEAN)
+          .build());
+      // pending values are compared by pairs:
+      MethodSpec.Builder stackSafeEquals = MethodSpec.methodBuilder(STACK_SAFE_EQUALS)
+          .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+          .addParameter(Object.class, "value")
+          .addParameter(Object.class, "other")
+          .returns(TypeName.BOOLEAN)
+          .addStatement("$T pending = new $T<>()", pendingType(), ArrayDeque.class)
+          .addStatement("pending.push(other)")
+          .addStatement("pending.push(value)")
+          .beginControlFlow("while (!pending.isEmpty())")
+          .addStatement("$T left = pending.pop()", Object.class)
+          .addStatement("$T right = pending.pop()", Object.class);
+      lazyTypeName.ifPresent(lazy -> stackSafeEquals.beginControlFlow("if (left instanceof $T)", lazyClassName.get())
+          .addStatement("left = (($T) left).eval()", lazy)
+          .endControlFlow()
+          .beginControlFlow("if (right instanceof $T)", lazyClassName.get())
+          .addStatement("right = (($T) right).eval()", lazy)
+          .endControlFlow());
+      methods.add(stackSafeEquals.beginControlFlow("if (left == right)")
+          .addStatement("continue")
+          .endControlFlow()
+          .beginControlFlow("if (left.getClass() == right.getClass() && left instanceof $L)", STRUCTURAL)
+          .beginControlFlow("if (!(($L) left).equalFields(right, pending))", STRUCTURAL)
+          .addStatement("return false")
+          .endControlFlow()
+          .nextControlFlow("else if (!left.equals(right))")
+          .addStatement("return false")
+          .endControlFlow()
+          .endControlFlow()
+          .addStatement("return true")
+          .build());
+    }
+
+    if (hashCode) {
+      structural.addMethod(MethodSpec.methodBuilder("pushFields")
+          .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+          .addParameter(pendingType(), "pending")
+          .returns(TypeName.BOOLEAN)
+          .build())
+          .addMethod(MethodSpec.methodBuilder("hashFields")
+              .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+              .addParameter(int[].class, "hashes")
+              .addParameter(TypeName.INT, "size")
+              .returns(TypeName.INT)
+              .build());
+      fields.add(FieldSpec.builder(Object.class, HASH_MARK, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+          .initializer("new $T()", Object.class)
+          .build());
+      // post-order: a value whose fields were pushed is found again below HASH_MARK, once the hash codes of its fields are computed.
+      MethodSpec.Builder stackSafeHashCode = MethodSpec.methodBuilder(STACK_SAFE_HASH_CODE)
+          .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+          .addParameter(Object.class, "value")
+          .returns(TypeName.INT)
+          .addStatement("$T pending = new $T<>()", pendingType(), ArrayDeque.class)
+          .addStatement("int[] hashes = new int[16]")
+          .addStatement("int size = 0")
+          .addStatement("pending.push(value)")
+          .beginControlFlow("while (!pending.isEmpty())")
+          .beginControlFlow("if (size == hashes.length)")
+          .addStatement("hashes = $T.copyOf(hashes, size * 2)", Arrays.class)
+          .endControlFlow()
+          .addStatement("$T next = pending.pop()", Object.class)
+          .beginControlFlow("if (next == $L)", HASH_MARK)
+          .addStatement("size = (($L) pending.pop()).hashFields(hashes, size)", STRUCTURAL);
+      lazyTypeName.ifPresent(lazy -> stackSafeHashCode.nextControlFlow("else if (next instanceof $T)", lazyClassName.get())
+          .addStatement("pending.push((($T) next).eval())", lazy));
+      methods.add(stackSafeHashCode.nextControlFlow("else if (!(next instanceof $1L && (($1L) next).pushFields(pending)))", STRUCTURAL)
+          .addStatement("hashes[size++] = next.hashCode()")
+          .endControlFlow()
+          .endControlFlow()
+          .addStatement("return hashes[0]")
+          .build());
+    }
+
+    return DerivedCodeSpec.codeSpec(Collections.singletonList(structural.build()), fields, methods, Collections.emptyList(),
+        Collections.emptyList());
+  }
+
+  private static String hashExpression(AlgebraicDataType adt, DataConstructor constructor, Function<DataArgument, String> fieldHash) {
+
+    int constructorIndex = constructorIndex(adt, constructor);
+
+    return IntStream.range(0, constructor.arguments().size() - 1).mapToObj(__ -> "(").collect(Collectors.joining()) +
+        PRIMES.get(constructorIndex) +
+        joinStrings(constructor.arguments().stream().map(da -> " + " + fieldHash.apply(da)), ") * " + PRIMES.get(constructorIndex));
+  }
+
+  private static int constructorIndex(AlgebraicDataType adt, DataConstructor constructor) {
+
+    return IntStream.range(0, adt.dataConstruction().constructors().size())
+        .filter(i -> adt.dataConstruction().constructors().get(i).name().equals(constructor.name()))
+        .findFirst()
+        .getAsInt();
+  }
+
+  private static TypeName pendingType() {
+
+    return ParameterizedTypeName.get(Deque.class, Object.class);
+  }
+
+  private static ClassName targetClassName(DeriveContext deriveContext) {
+
+    return ClassName.get(deriveContext.targetPackage(), deriveContext.targetClassName());
+  }
+
+  private static TypeName implTypeName(DeriveContext deriveContext, String className, List<TypeVariableName> typeVariableNames) {
+
+    return typeVariableNames.isEmpty()
+           ? Utils.getClassName(deriveContext, className)
+           : ParameterizedTypeName.get(Utils.getClassName(deriveContext, className), typeVariableNames.stream()
+               .map(__ -> WildcardTypeName.subtypeOf(Object.class))
+               .toArray(TypeName[]::new));
+  }
+
+  private static TypeName wildcardTypeName(AlgebraicDataType adt) {
+
+    ClassName rawType = ClassName.get(adt.typeConstructor().typeElement());
+    return adt.typeConstructor().typeVariables().isEmpty()
+           ? rawType
+           : ParameterizedTypeName.get(rawType, adt.typeConstructor()
+               .typeVariables()
+               .stream()
+               .map(__ -> WildcardTypeName.subtypeOf(Object.class))
+               .toArray(TypeName[]::new));
+  }
+
+  private static boolean isRecursive(AlgebraicDataType adt, DeriveUtils deriveUtils) {
+
+    return adt.dataConstruction()
+        .constructors()
+        .stream()
+        .anyMatch(dc -> dc.arguments().stream().anyMatch(da -> isSelfReference(adt, da, deriveUtils)));
+  }
+
+  private static boolean isSelfReference(AlgebraicDataType adt, DataArgument da, DeriveUtils deriveUtils) {
+
+    return deriveUtils.types().isSameType(deriveUtils.types().erasure(da.type()),
+        deriveUtils.types().erasure(adt.typeConstructor().declaredType()));
   }
 
-  private static String equalityTest(DataArgument da) {
+  private static String equalityTest(DataArgument da, String otherValue) {
 
     String thisField = "this." + da.fieldName();
     return da.type().accept(new TypeKindVisitor7<String, String>() {
@@ -331,7 +932,7 @@ public final class StrictConstructorDerivator {
         return "(Float.floatToIntBits(" + thisField + ") == Float.floatToIntBits(" + p + "))";
       }
 
-    }, da.fieldName());
+    }, otherValue);
   }
 
   private static String hascode(DataArgument da) {
@@ -18,6 +18,8 @@
  */
 package org.derive4j.processor.derivator.patternmatching;
 
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
@@ -63,30 +65,45 @@ public class OtherwiseMatchingStepDerivator {
 
   static TypeSpec otherwiseMatchingStepTypeSpec(AlgebraicDataType adt, DeriveContext deriveContext, DeriveUtils deriveUtils) {
 
+    TypeName stepTypeName = PatternMatchingDerivator.stepTypeName(adt, deriveContext);
+
     TypeSpec.Builder otherwiseMatchBuilder = TypeSpec.classBuilder(otherwiseBuilderClassName())
         .addTypeVariables(PatternMatchingDerivator.matcherVariables(adt).map(TypeVariableName::get).collect(Collectors.toList()))
         .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
-        .addFields(adt.dataConstruction()
-            .constructors()
-            .stream()
-            .map(dc -> FieldSpec.builder(mapperTypeName(adt, dc, deriveContext, deriveUtils), mapperFieldName(dc))
-                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
-                .build())
-            .collect(Collectors.toList()));
+        .addField(stepTypeName, "previous", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(TypeName.INT, "caseIndex", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(TypeName.OBJECT, "caseMapper", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(TypeName.BOOLEAN, "constantCases", Modifier.PRIVATE, Modifier.FINAL)
+        .addField(TypeName.OBJECT, "caseConstant", Modifier.PRIVATE, Modifier.FINAL);
 
-    MethodSpec.Builder otherwiseMatchConstructorBuilder = MethodSpec.constructorBuilder()
+    MethodSpec otherwiseMatchConstructor = MethodSpec.constructorBuilder()
         .addModifiers(Modifier.PRIVATE)
-        .addParameters(adt.dataConstruction()
-            .constructors()
-            .stream()
-            .map(dc -> ParameterSpec.builder(mapperTypeName(adt, dc, deriveContext, deriveUtils), mapperFieldName(dc)).build())
-            .collect(Collectors.toList()));
+        .addParameter(stepTypeName, "previous")
+        .addParameter(TypeName.INT, "caseIndex")
+        .addParameter(TypeName.OBJECT, "caseMapper")
+        .addParameter(TypeName.BOOLEAN, "constantCase")
+        .addParameter(TypeName.OBJECT, "caseConstant")
+        .addStatement("this.previous = previous")
+        .addStatement("this.caseIndex = caseIndex")
+        .addStatement("this.caseMapper = caseMapper")
+        .addStatement("this.constantCases = constantCase && (previous == null || previous.constantCases)")
+        .addStatement("this.caseConstant = caseConstant")
+        .build();
 
-    for (DataConstructor dc : adt.dataConstruction().constructors()) {
-      otherwiseMatchConstructorBuilder.addStatement("this.$L = $L", mapperFieldName(dc), mapperFieldName(dc));
-    }
+    MethodSpec constantResults = MethodSpec.methodBuilder("constantResults")
+        .addModifiers(Modifier.PRIVATE)
+        .addParameter(TypeName.OBJECT, "defaultResult")
+        .returns(ArrayTypeName.of(TypeName.OBJECT))
+        .addStatement("$T[] results = new $T[$L]", Object.class, Object.class, adt.dataConstruction().constructors().size())
+        .addStatement("$T.fill(results, defaultResult)", Arrays.class)
+        .beginControlFlow("for ($T step = this; step != null; step = step.previous)", stepTypeName)
+        .addStatement("results[step.caseIndex] = step.caseConstant")
+        .endControlFlow()
+        .addStatement("return results")
+        .build();
 
-    return otherwiseMatchBuilder.addMethod(otherwiseMatchConstructorBuilder.build())
+    return otherwiseMatchBuilder.addMethod(otherwiseMatchConstructor)
+        .addMethod(constantResults)
         .addMethods(otherwiseMethods(adt, deriveContext, deriveUtils))
         .addMethod(otherwiseNoneMethod(adt, deriveContext, deriveUtils))
         .addMethods(FlavourImpl.findEitherType(deriveContext.flavour(), deriveUtils.elements())
@@ -96,6 +113,93 @@ public class OtherwiseMatchingStepDerivator {
 
   }
 
+  /**
+   * Visitor of the otherwise method: cases that were not matched fall back to the otherwise supplier, without a lambda allocated per
+   * missing case.
+   */
+  static Stream<TypeSpec> otherwiseVisitorTypeSpec(AlgebraicDataType adt, DeriveContext deriveContext, DeriveUtils deriveUtils) {
+
+    return DataConstructions.cases()
+        .multipleConstructors(MultipleConstructorsSupport.cases()
+            .visitorDispatch((visitorParam, visitorType, constructors) -> Stream.of(
+                otherwiseVisitorTypeSpec(adt, visitorType, constructors, deriveContext, deriveUtils)))
+            .otherwise(Stream::<TypeSpec>empty))
+        .otherwise(Stream::<TypeSpec>empty)
+        .apply(adt.dataConstruction());
+  }
+
+  private static TypeSpec otherwiseVisitorTypeSpec(AlgebraicDataType adt, DeclaredType visitorType, List<DataConstructor> constructors,
+      DeriveContext deriveContext, DeriveUtils deriveUtils) {
+
+    TypeElement f0 = FlavourImpl.findF0(deriveContext.flavour(), deriveUtils.elements());
+    TypeName otherwiseType = TypeName.get(deriveUtils.types().getDeclaredType(f0, adt.matchMethod().returnTypeVariable()));
+
+    MethodSpec.Builder constructor = MethodSpec.constructorBuilder()
+        .addParameters(constructors.stream()
+            .map(dc -> ParameterSpec.builder(mapperTypeName(adt, dc, deriveContext, deriveUtils), mapperFieldName(dc)).build())
+            .collect(Collectors.toList()))
+        .addParameter(otherwiseType, "otherwise");
+
+    for (DataConstructor dc : constructors) {
+      constructor.addStatement("this.$N = $N", mapperFieldName(dc), mapperFieldName(dc));
+    }
+    constructor.addStatement("this.otherwise = otherwise");
+
+    return TypeSpec.classBuilder(otherwiseVisitorClassName(visitorType))
+        .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+        .addTypeVariables(PatternMatchingDerivator.matcherVariables(adt).map(TypeVariableName::get).collect(Collectors.toList()))
+        .addSuperinterface(TypeName.get(visitorType))
+        .addFields(constructors.stream()
+            .map(dc -> FieldSpec.builder(mapperTypeName(adt, dc, deriveContext, deriveUtils), mapperFieldName(dc))
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .build())
+            .collect(Collectors.toList()))
+        .addField(otherwiseType, "otherwise", Modifier.PRIVATE, Modifier.FINAL)
+        .addMethod(constructor.build())
+        .addMethods(constructors.stream()
+            .map(dc -> deriveUtils.overrideMethodBuilder(dc.deconstructor().visitorMethod(), visitorType)
+                .addStatement("return (this.$1L != null) ? this.$1L.$2L($3L) : this.otherwise.$4L()", mapperFieldName(dc),
+                    MapperDerivator.mapperApplyMethod(deriveUtils, deriveContext, dc),
+                    Utils.asLambdaParametersString(dc.arguments(), dc.typeRestrictions()),
+                    deriveUtils.allAbstractMethods(f0).get(0).getSimpleName().toString())
+                .build())
+            .collect(Collectors.toList()))
+        .build();
+  }
+
+  /**
+   * Declares the mapper of each constructor (or null if it was not matched), in a single walk of the steps: they were created in the
+   * order of the constructors, so they are found from the last constructor to the first one.
+   */
+  private static CodeBlock collectMappers(AlgebraicDataType adt, DeriveContext deriveContext, DeriveUtils deriveUtils) {
+
+    CodeBlock.Builder codeBlock = CodeBlock.builder()
+        .addStatement("$T matchStep = this", PatternMatchingDerivator.stepTypeName(adt, deriveContext));
+    List<DataConstructor> constructors = adt.dataConstruction().constructors();
+
+    for (int i = constructors.size() - 1; i >= 0; i--) {
+      DataConstructor dc = constructors.get(i);
+      TypeName mapperType = mapperTypeName(adt, dc, deriveContext, deriveUtils);
+      codeBlock.addStatement("$T $L = (matchStep != null && matchStep.caseIndex == $L) ? ($T) matchStep.caseMapper : null", mapperType,
+          collectedMapperName(dc), i, mapperType);
+      if (i > 0) {
+        codeBlock.addStatement("matchStep = (matchStep != null && matchStep.caseIndex == $L) ? matchStep.previous : matchStep", i);
+      }
+    }
+
+    return codeBlock.build();
+  }
+
+  private static String collectedMapperName(DataConstructor dc) {
+
+    return mapperFieldName(dc) + "Case";
+  }
+
+  private static AnnotationSpec uncheckedAnnotation() {
+
+    return AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build();
+  }
+
   private static List<MethodSpec> otherwiseMethods(AlgebraicDataType adt, DeriveContext deriveContext, DeriveUtils deriveUtils) {
 
     TypeElement f0 = FlavourImpl.findF0(deriveContext.flavour(), deriveUtils.elements());
@@ -106,13 +210,14 @@ public class OtherwiseMatchingStepDerivator {
 
     return Arrays.asList(MethodSpec.methodBuilder("otherwise")
         .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+        .addAnnotation(uncheckedAnnotation())
         .addParameter(
             ParameterSpec.builder(TypeName.get(deriveUtils.types().getDeclaredType(f0, adt.matchMethod().returnTypeVariable())), "otherwise").build())
         .returns(returnType)
         .addCode(DataConstructions.cases()
             .multipleConstructors(MultipleConstructorsSupport.cases()
                 .visitorDispatch(
-                    (visitorParam, visitorType, constructors) -> visitorDispatchImpl(deriveUtils, deriveContext, f0, adt, visitorType, visitorParam))
+                    (visitorParam, visitorType, constructors) -> visitorDispatchImpl(deriveContext, deriveUtils, adt, visitorType, visitorParam))
                 .functionsDispatch(constructors -> functionsDispatchImpl(deriveUtils, deriveContext, f0, adt, constructors)))
             .otherwise(() -> {
               throw new IllegalArgumentException();
@@ -120,7 +225,10 @@ public class OtherwiseMatchingStepDerivator {
             .apply(adt.dataConstruction()))
         .build(), MethodSpec.methodBuilder("otherwise")
         .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+        .addAnnotation(uncheckedAnnotation())
         .addParameter(TypeName.get(adt.matchMethod().returnTypeVariable()), uncapitalize(adt.matchMethod().returnTypeVariable().toString()))
+        .addCode(PatternMatchingDerivator.constantResultsLookup(adt, deriveContext, "this",
+            uncapitalize(adt.matchMethod().returnTypeVariable().toString())))
         .addStatement("return this.$L(() -> $L)", "otherwise", uncapitalize(adt.matchMethod().returnTypeVariable().toString()))
         .returns(returnType)
         .build());
@@ -136,6 +244,7 @@ public class OtherwiseMatchingStepDerivator {
 
     return MethodSpec.methodBuilder("otherwise" + Utils.capitalize(optionType.noneConstructor()))
         .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+        .addAnnotation(uncheckedAnnotation())
         .returns(returnType)
         .addCode(DataConstructions.cases()
             .multipleConstructors(MultipleConstructorsSupport.cases()
@@ -153,7 +262,7 @@ public class OtherwiseMatchingStepDerivator {
   private static CodeBlock functionsDispatchImpl(DeriveUtils deriveUtils, DeriveContext deriveContext, TypeElement f0, AlgebraicDataType adt,
       List<DataConstructor> constructors) {
 
-    CodeBlock.Builder codeBlock = CodeBlock.builder();
+    CodeBlock.Builder codeBlock = CodeBlock.builder().add(collectMappers(adt, deriveContext, deriveUtils));
 
     for (DataConstructor dc : constructors) {
       NameAllocator nameAllocator = new NameAllocator();
@@ -162,10 +271,10 @@ public class OtherwiseMatchingStepDerivator {
       Stream.concat(dc.arguments().stream(), dc.typeRestrictions().stream().map(TypeRestriction::idFunction))
           .forEach(da -> nameAllocator.newName(da.fieldName(), da.fieldName()));
 
-      codeBlock.addStatement("$1T $2L = (this.$3L != null) ? this.$3L : (" +
+      codeBlock.addStatement("$1T $2L = ($3L != null) ? $3L : (" +
           joinStringsAsArguments(IntStream.range(5, 5 + dc.arguments().size() + dc.typeRestrictions().size()).mapToObj(i -> "$" + i + 'L')) +
           ") -> otherwise.$4L()", Stream.concat(
-          Stream.of(mapperTypeName(adt, dc, deriveContext, deriveUtils), nameAllocator.get("case var"), mapperFieldName(dc),
+          Stream.of(mapperTypeName(adt, dc, deriveContext, deriveUtils), nameAllocator.get("case var"), collectedMapperName(dc),
               deriveUtils.allAbstractMethods(f0).get(0).getSimpleName().toString()),
           Stream.concat(dc.arguments().stream(), dc.typeRestrictions().stream().map(TypeRestriction::idFunction))
               .map(DataArgument::fieldName)
@@ -178,39 +287,35 @@ public class OtherwiseMatchingStepDerivator {
         joinStringsAsArguments(constructors.stream().map(MapperDerivator::mapperFieldName))).build();
   }
 
-  private static CodeBlock visitorDispatchImpl(DeriveUtils deriveUtils, DeriveContext deriveContext, TypeElement f0, AlgebraicDataType adt,
+  private static CodeBlock visitorDispatchImpl(DeriveContext deriveContext, DeriveUtils deriveUtils, AlgebraicDataType adt,
       DeclaredType visitorType, VariableElement visitorParam) {
 
     String visitorVarName = visitorParam.getSimpleName().toString();
     String adtLambdaParam = uncapitalize(adt.typeConstructor().declaredType().asElement().getSimpleName());
 
-    CodeBlock lambdaArgs = adt.dataConstruction().constructors().stream().map(dc -> {
-      NameAllocator nameAllocator = new NameAllocator();
-      nameAllocator.newName("otherwise", "otherwise arg");
-      nameAllocator.newName(adtLambdaParam, "adt var");
-      nameAllocator.newName(visitorVarName, "visitor var");
-      Stream.concat(dc.arguments().stream(), dc.typeRestrictions().stream().map(TypeRestriction::idFunction))
-          .forEach(da -> nameAllocator.newName(da.fieldName(), da.fieldName()));
-
-      return CodeBlock.builder()
-          .add("this.$1L != null ? this.$1L : (" +
-                  joinStringsAsArguments(IntStream.range(3, 3 + dc.arguments().size() + dc.typeRestrictions().size()).mapToObj(i -> "$" + i + 'L')) +
-                  ") -> otherwise.$2L()",
-              (Object[]) Stream.concat(Stream.of(mapperFieldName(dc), deriveUtils.allAbstractMethods(f0).get(0).getSimpleName().toString()),
-                  Stream.concat(dc.arguments().stream(), dc.typeRestrictions().stream().map(TypeRestriction::idFunction))
-                      .map(DataArgument::fieldName)
-                      .map(nameAllocator::get)).toArray(String[]::new))
-          .build();
-    }).reduce((cb1, cb2) -> CodeBlock.builder().add(cb1).add(",\n").add(cb2).build()).orElse(CodeBlock.builder().build());
-
     NameAllocator nameAllocator = new NameAllocator();
     nameAllocator.newName("otherwise", "otherwise arg");
+    nameAllocator.newName("matchStep", "step var");
+    adt.dataConstruction().constructors().forEach(dc -> nameAllocator.newName(collectedMapperName(dc), collectedMapperName(dc)));
     nameAllocator.newName(adtLambdaParam, "adt var");
     nameAllocator.newName(visitorVarName, "visitor var");
 
+    if (PatternMatchingDerivator.hasEnumMappersLookup(adt)) {
+      return CodeBlock.builder()
+          .add(collectMappers(adt, deriveContext, deriveUtils))
+          .add(PatternMatchingDerivator.enumMappersLookup(adt, deriveContext, deriveUtils, adt.dataConstruction()
+              .constructors()
+              .stream()
+              .map(dc -> "(" + collectedMapperName(dc) + " != null) ? " + collectedMapperName(dc) + " : otherwise")
+              .collect(Collectors.toList())))
+          .build();
+    }
+
     return CodeBlock.builder()
-        .addStatement("$T $L = $T.$L($L)", TypeName.get(visitorType), nameAllocator.get("visitor var"),
-            ClassName.get(deriveContext.targetPackage(), deriveContext.targetClassName()), MapperDerivator.visitorLambdaFactoryName(adt), lambdaArgs)
+        .add(collectMappers(adt, deriveContext, deriveUtils))
+        .addStatement("$T $L = new $L<>($L, otherwise)", TypeName.get(visitorType), nameAllocator.get("visitor var"),
+            otherwiseVisitorClassName(visitorType),
+            joinStringsAsArguments(adt.dataConstruction().constructors().stream().map(OtherwiseMatchingStepDerivator::collectedMapperName)))
         .addStatement("return $1L -> $1L.$2L($3L)", nameAllocator.get("adt var"), adt.matchMethod().element().getSimpleName(),
             nameAllocator.get("visitor var"))
         .build();
@@ -219,7 +324,7 @@ public class OtherwiseMatchingStepDerivator {
   private static CodeBlock functionsDispatchOptionImpl(DeriveUtils deriveUtils, DeriveContext deriveContext, FlavourImpl.OptionType optionType,
       AlgebraicDataType adt, List<DataConstructor> constructors) {
 
-    CodeBlock.Builder codeBlock = CodeBlock.builder();
+    CodeBlock.Builder codeBlock = CodeBlock.builder().add(collectMappers(adt, deriveContext, deriveUtils));
 
     for (DataConstructor dc : constructors) {
       NameAllocator nameAllocator = new NameAllocator();
@@ -230,9 +335,9 @@ public class OtherwiseMatchingStepDerivator {
       String lambdaArgs = joinStringsAsArguments(
           IntStream.range(8, 8 + dc.arguments().size() + dc.typeRestrictions().size()).mapToObj(i -> "$" + i + 'L'));
 
-      codeBlock.addStatement("$1T $2L = (this.$3L != null) ? (" +
+      codeBlock.addStatement("$1T $2L = ($3L != null) ? (" +
               lambdaArgs +
-              ") -> $4T.$5L(this.$3L.$6L(" +
+              ") -> $4T.$5L($3L.$6L(" +
               lambdaArgs +
               "))\n" +
               ": (" +
@@ -241,7 +346,7 @@ public class OtherwiseMatchingStepDerivator {
 
           Stream.concat(Stream.of(mapperTypeName(adt, dc, deriveContext, deriveUtils,
               TypeName.get(deriveUtils.types().getDeclaredType(optionType.typeElement(), adt.matchMethod().returnTypeVariable()))),
-              nameAllocator.get("case var"), mapperFieldName(dc), ClassName.get(optionType.typeElement()), optionType.someConstructor(),
+              nameAllocator.get("case var"), collectedMapperName(dc), ClassName.get(optionType.typeElement()), optionType.someConstructor(),
               deriveUtils.allAbstractMethods(dc.deconstructor().visitorType()).get(0).getSimpleName().toString(), optionType.noneConstructor()),
               Stream.concat(dc.arguments().stream(), dc.typeRestrictions().stream().map(TypeRestriction::idFunction))
                   .map(DataArgument::fieldName)
@@ -272,8 +377,8 @@ public class OtherwiseMatchingStepDerivator {
           IntStream.range(6, 6 + dc.arguments().size() + dc.typeRestrictions().size()).mapToObj(i -> "$" + i + 'L'));
 
       return CodeBlock.builder()
-          .add("(this.$1L != null) ? (" + lambdaArg + ") -> $2T.$3L(this.$1L.$4L(" + lambdaArg + "))\n" + ": (" + lambdaArg + ") -> $2T.$5L()",
-              Stream.<Object>concat(Stream.of(mapperFieldName(dc), ClassName.get(optionType.typeElement()), optionType.someConstructor(),
+          .add("($1L != null) ? (" + lambdaArg + ") -> $2T.$3L($1L.$4L(" + lambdaArg + "))\n" + ": (" + lambdaArg + ") -> $2T.$5L()",
+              Stream.<Object>concat(Stream.of(collectedMapperName(dc), ClassName.get(optionType.typeElement()), optionType.someConstructor(),
                   MapperDerivator.mapperApplyMethod(deriveUtils, deriveContext, dc), optionType.noneConstructor()),
                   Stream.concat(dc.arguments().stream(), dc.typeRestrictions().stream().map(TypeRestriction::idFunction))
                       .map(DataArgument::fieldName)
@@ -286,6 +391,7 @@ public class OtherwiseMatchingStepDerivator {
     nameAllocator.newName(visitorVarName, "visitor var");
 
     return CodeBlock.builder()
+        .add(collectMappers(adt, deriveContext, deriveUtils))
         .addStatement("$T $L = $T.$L($L)", TypeName.get(deriveUtils.resolve(visitorType,
             tv -> deriveUtils.types().isSameType(tv, adt.matchMethod().returnTypeVariable())
                   ? Optional.of(deriveUtils.types().getDeclaredType(optionType.typeElement(), adt.matchMethod().returnTypeVariable()))
@@ -326,6 +432,7 @@ public class OtherwiseMatchingStepDerivator {
 
     return Arrays.asList(MethodSpec.methodBuilder(otherwiseLeftMethodName)
         .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+        .addAnnotation(uncheckedAnnotation())
         .addTypeVariable(leftTypeVarName)
         .addParameter(ParameterizedTypeName.get(ClassName.get(f0), leftTypeVarName), arg)
         .returns(returnType)
@@ -352,7 +459,7 @@ public class OtherwiseMatchingStepDerivator {
   private static CodeBlock functionsDispatchEitherImpl(DeriveUtils deriveUtils, DeriveContext deriveContext, TypeElement f0,
       FlavourImpl.EitherType eitherType, TypeName eitherTypeName, AlgebraicDataType adt, List<DataConstructor> constructors, String argName) {
 
-    CodeBlock.Builder codeBlock = CodeBlock.builder();
+    CodeBlock.Builder codeBlock = CodeBlock.builder().add(collectMappers(adt, deriveContext, deriveUtils));
     TypeElement eitherTypeElement = getTypeElement(eitherType);
 
     for (DataConstructor dc : constructors) {
@@ -365,9 +472,9 @@ public class OtherwiseMatchingStepDerivator {
       String lambdaArgs = joinStringsAsArguments(
           IntStream.range(9, 9 + dc.arguments().size() + dc.typeRestrictions().size()).mapToObj(i -> "$" + i + 'L'));
 
-      codeBlock.addStatement("$1T $2L = (this.$3L != null) ? (" +
+      codeBlock.addStatement("$1T $2L = ($3L != null) ? (" +
               lambdaArgs +
-              ") -> $4T.$5L(this.$3L.$6L(" +
+              ") -> $4T.$5L($3L.$6L(" +
               lambdaArgs +
               "))\n" +
               ": (" +
@@ -375,7 +482,7 @@ public class OtherwiseMatchingStepDerivator {
               ") -> $4T.$7L(left.$8L())",
 
           Stream.concat(
-              Stream.of(mapperTypeName(adt, dc, deriveContext, deriveUtils, eitherTypeName), nameAllocator.get("case var"), mapperFieldName(dc),
+              Stream.of(mapperTypeName(adt, dc, deriveContext, deriveUtils, eitherTypeName), nameAllocator.get("case var"), collectedMapperName(dc),
                   ClassName.get(eitherTypeElement), getRightConstructor(eitherType),
                   deriveUtils.allAbstractMethods(dc.deconstructor().visitorType()).get(0).getSimpleName().toString(), getLeftConstructor(eitherType),
                   deriveUtils.allAbstractMethods(f0).get(0).getSimpleName().toString()),
@@ -411,15 +518,15 @@ public class OtherwiseMatchingStepDerivator {
           IntStream.range(7, 7 + dc.arguments().size() + dc.typeRestrictions().size()).mapToObj(i -> "$" + i + 'L'));
 
       return CodeBlock.builder()
-          .add("(this.$1L != null) ? (" +
+          .add("($1L != null) ? (" +
               lambdaArg +
-              ") -> $2T.$3L(this.$1L.$4L(" +
+              ") -> $2T.$3L($1L.$4L(" +
               lambdaArg +
               "))\n" +
               ": (" +
               lambdaArg +
               ") -> $2T.$5L(left.$6L())", Stream.concat(
-              Stream.of(mapperFieldName(dc), ClassName.get(eitherTypeElement), getRightConstructor(eitherType),
+              Stream.of(collectedMapperName(dc), ClassName.get(eitherTypeElement), getRightConstructor(eitherType),
                   MapperDerivator.mapperApplyMethod(deriveUtils, deriveContext, dc), getLeftConstructor(eitherType),
                   deriveUtils.allAbstractMethods(f0).get(0).getSimpleName().toString()),
               Stream.concat(dc.arguments().stream(), dc.typeRestrictions().stream().map(TypeRestriction::idFunction))
@@ -433,6 +540,7 @@ public class OtherwiseMatchingStepDerivator {
     nameAllocator.newName(visitorVarName, "visitor var");
 
     return CodeBlock.builder()
+        .add(collectMappers(adt, deriveContext, deriveUtils))
         .addStatement("$T $L = $T.$L($L)", deriveUtils.resolveToTypeName(visitorType,
             tv -> deriveUtils.types().isSameType(tv, adt.matchMethod().returnTypeVariable())
                   ? Optional.of(eitherTypeName)
@@ -449,4 +557,9 @@ public class OtherwiseMatchingStepDerivator {
     return "PartialMatchBuilder";
   }
 
+  private static String otherwiseVisitorClassName(DeclaredType visitorType) {
+
+    return "Otherwise" + visitorType.asElement().getSimpleName().toString();
+  }
+
 }
@@ -19,11 +19,12 @@
 package org.derive4j.processor.derivator.patternmatching;
 
 import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
 import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.NameAllocator;
-import com.squareup.javapoet.ParameterSpec;
 import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
@@ -43,11 +44,11 @@ import org.derive4j.processor.api.DerivedCodeSpec;
 import org.derive4j.processor.api.model.AlgebraicDataType;
 import org.derive4j.processor.api.model.DataConstructor;
 import org.derive4j.processor.api.model.DeriveContext;
+import org.derive4j.processor.derivator.ConstructorTagDerivator;
 import org.derive4j.processor.derivator.MapperDerivator;
 
 import static org.derive4j.processor.Utils.fold;
 import static org.derive4j.processor.Utils.getClassName;
-import static org.derive4j.processor.Utils.joinStringsAsArguments;
 import static org.derive4j.processor.Utils.uncapitalize;
 import static org.derive4j.processor.derivator.MapperDerivator.mapperFieldName;
 import static org.derive4j.processor.derivator.MapperDerivator.mapperTypeName;
@@ -92,7 +93,7 @@ public class PatternMatchingDerivator {
 
       }
 
-      return DeriveResult.result(DerivedCodeSpec.codeSpec(Stream.concat(
+      return DeriveResult.result(DerivedCodeSpec.codeSpec(Stream.of(
           // Total matching path:
           IntStream.range(0, constructors.size())
               .mapToObj(i -> totalMatchingStepTypeSpec(adt, constructors.subList(0, i), constructors.get(i),
@@ -105,13 +106,18 @@ public class PatternMatchingDerivator {
                              ? partialMatchingStepTypeSpec(adt, constructors.subList(0, i), constructors.get(i),
                   constructors.subList(i + 1, constructors.size()), deriveContext, deriveUtils)
                              : OtherwiseMatchingStepDerivator.otherwiseMatchingStepTypeSpec(adt, deriveContext, deriveUtils))
-          : Stream.empty()
+          : Stream.<TypeSpec>empty(),
 
-                                                                       ).collect(Collectors.toList()),
+          // Visitor used by the otherwise method:
+          (constructors.size() > 1)
+          ? OtherwiseMatchingStepDerivator.otherwiseVisitorTypeSpec(adt, deriveContext, deriveUtils)
+          : Stream.<TypeSpec>empty()
+
+                                                                       ).flatMap(Function.identity()).collect(Collectors.toList()),
 
           initialCasesStepField.build(),
 
-          matchFactory.build()));
+          matchFactory.build()).append(ConstructorTagDerivator.derive(adt, deriveContext, deriveUtils)));
 
     });
   }
@@ -122,20 +128,12 @@ public class PatternMatchingDerivator {
     return TypeSpec.classBuilder(partialMatchBuilderClassName(currentConstructor))
         .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
         .addTypeVariables(matcherVariables(adt).map(TypeVariableName::get).collect(Collectors.toList()))
-        .superclass(ParameterizedTypeName.get(getClassName(deriveContext, otherwiseBuilderClassName()),
-            matcherVariables(adt).map(TypeVariableName::get).toArray(TypeName[]::new)))
-        .addMethod(MethodSpec.constructorBuilder()
-            .addModifiers(Modifier.PRIVATE)
-            .addParameters(previousConstructors.stream()
-                .map(dc -> ParameterSpec.builder(mapperTypeName(adt, dc, deriveContext, deriveUtils), mapperFieldName(dc)).build())
-                .collect(Collectors.toList()))
-            .addStatement("super($L)", joinStringsAsArguments(Stream.concat(previousConstructors.stream().map(MapperDerivator::mapperFieldName),
-                IntStream.range(previousConstructors.size(), adt.dataConstruction().constructors().size()).mapToObj(__ -> "null"))))
-            .build())
-        .addMethods(Stream.concat(partialMatchMethodBuilder(adt, previousConstructors, 0, currentConstructor, nextConstructors.isEmpty()
-                                                                                                              ? otherwiseBuilderClassName()
-                                                                                                              : partialMatchBuilderClassName(
-                                                                                                                  nextConstructors.get(0)),
+        .superclass(stepTypeName(adt, deriveContext))
+        .addMethod(stepConstructor(adt, deriveContext))
+        .addMethods(Stream.concat(partialMatchMethodBuilder(adt, previousConstructors, currentConstructor, nextConstructors.isEmpty()
+                                                                                                     ? otherwiseBuilderClassName()
+                                                                                                     : partialMatchBuilderClassName(
+                                                                                                         nextConstructors.get(0)),
             deriveContext, deriveUtils), partialMatchMethodBuilders(adt, previousConstructors, nextConstructors, deriveContext, deriveUtils))
             .map(MethodSpec.Builder::build)
             .collect(Collectors.toList()))
@@ -149,13 +147,12 @@ public class PatternMatchingDerivator {
       String returnCLassName = (i == nextConstructors.size())
                                ? otherwiseBuilderClassName()
                                : partialMatchBuilderClassName(nextConstructors.get(i));
-      return partialMatchMethodBuilder(adt, previousConstructors, i, nextConstructors.get(i - 1), returnCLassName, deriveContext, deriveUtils);
+      return partialMatchMethodBuilder(adt, previousConstructors, nextConstructors.get(i - 1), returnCLassName, deriveContext, deriveUtils);
     }).flatMap(Function.identity());
   }
 
   private static Stream<MethodSpec.Builder> partialMatchMethodBuilder(AlgebraicDataType adt, List<DataConstructor> previousConstructors,
-      int nbSkipConstructors, DataConstructor currentConstructor, String partialMatchBuilderClassName, DeriveContext deriveContext,
-      DeriveUtils deriveUtils) {
+      DataConstructor currentConstructor, String partialMatchBuilderClassName, DeriveContext deriveContext, DeriveUtils deriveUtils) {
 
     ParameterizedTypeName returnType = ParameterizedTypeName.get(getClassName(deriveContext, partialMatchBuilderClassName),
         matcherVariables(adt).map(TypeName::get).toArray(TypeName[]::new));
@@ -164,24 +161,130 @@ public class PatternMatchingDerivator {
             .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
             .returns(returnType)
             .addParameter(mapperTypeName(adt, currentConstructor, deriveContext, deriveUtils), mapperFieldName(currentConstructor))
-            .addStatement("return new $L<>($L)", partialMatchBuilderClassName, Stream.concat(
-                Stream.concat(previousConstructors.stream().map(dc -> "super." + mapperFieldName(dc)),
-                    IntStream.range(0, nbSkipConstructors).mapToObj(__ -> "null")), Stream.of(mapperFieldName(currentConstructor)))
-                .reduce((s1, s2) -> s1 + ", " + s2)
-                .orElse("")),
+            .addStatement("return new $L<>($L, $L, $L, false, null)", partialMatchBuilderClassName, previousConstructors.isEmpty()
+                                                                                                     ? "null"
+                                                                                                     : "this",
+                adt.dataConstruction().constructors().indexOf(currentConstructor), mapperFieldName(currentConstructor)),
+
+        constantStepMethodBuilder(adt, previousConstructors, currentConstructor, partialMatchBuilderClassName, deriveContext,
+            deriveUtils).returns(returnType));
+  }
+
+  /**
+   * Matching steps only reference the previous step and the mapper they were given, so that a match over N constructors is built in
+   * O(N): mappers are not copied from step to step but collected, in a single walk of the steps, by the method completing the match.
+   */
+  static MethodSpec stepConstructor(AlgebraicDataType adt, DeriveContext deriveContext) {
+
+    return MethodSpec.constructorBuilder()
+        .addModifiers(Modifier.PRIVATE)
+        .addParameter(stepTypeName(adt, deriveContext), "previous")
+        .addParameter(TypeName.INT, "caseIndex")
+        .addParameter(TypeName.OBJECT, "caseMapper")
+        .addParameter(TypeName.BOOLEAN, "constantCase")
+        .addParameter(TypeName.OBJECT, "caseConstant")
+        .addStatement("super(previous, caseIndex, caseMapper, constantCase, caseConstant)")
+        .build();
+  }
+
+  static ParameterizedTypeName stepTypeName(AlgebraicDataType adt, DeriveContext deriveContext) {
 
-        constantMatchMethodBuilder(adt, currentConstructor).returns(returnType));
+    return ParameterizedTypeName.get(getClassName(deriveContext, otherwiseBuilderClassName()),
+        matcherVariables(adt).map(TypeVariableName::get).toArray(TypeName[]::new));
+  }
+
+  static MethodSpec.Builder constantMatchMethodBuilder(AlgebraicDataType adt, List<DataConstructor> previousConstructors,
+      DataConstructor currentConstructor, DeriveContext deriveContext) {
+
+    NameAllocator nameAllocator = new NameAllocator();
+    String argName = uncapitalize(adt.matchMethod().returnTypeVariable().toString());
+    MethodSpec.Builder constantMatchMethod = MethodSpec.methodBuilder(currentConstructor.name())
+        .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+        .addParameter(TypeName.get(adt.matchMethod().returnTypeVariable()), nameAllocator.newName(argName));
+    if (!previousConstructors.isEmpty()) {
+      constantMatchMethod.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build())
+          .addCode(constantResultsLookup(adt, deriveContext, "super", argName));
+    }
+    return constantMatchMethod.addStatement("return this.$L(($L) -> $L)", currentConstructor.name(),
+            Utils.asLambdaParametersString(currentConstructor.arguments(), currentConstructor.typeRestrictions(), nameAllocator), argName);
   }
 
-  static MethodSpec.Builder constantMatchMethodBuilder(AlgebraicDataType adt, DataConstructor currentConstructor) {
+  /**
+   * Constant cases are also recorded as such by the steps, so that a match with only constant results can be completed by a table
+   * lookup on the constructor tag.
+   */
+  static MethodSpec.Builder constantStepMethodBuilder(AlgebraicDataType adt, List<DataConstructor> previousConstructors,
+      DataConstructor currentConstructor, String nextStepClassName, DeriveContext deriveContext, DeriveUtils deriveUtils) {
 
     NameAllocator nameAllocator = new NameAllocator();
     String argName = uncapitalize(adt.matchMethod().returnTypeVariable().toString());
     return MethodSpec.methodBuilder(currentConstructor.name())
         .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
         .addParameter(TypeName.get(adt.matchMethod().returnTypeVariable()), nameAllocator.newName(argName))
-        .addStatement("return this.$L(($L) -> $L)", currentConstructor.name(),
-            Utils.asLambdaParametersString(currentConstructor.arguments(), currentConstructor.typeRestrictions(), nameAllocator), argName);
+        .addStatement("return new $L<>($L, $L, ($T) ($L) -> $L, true, $L)", nextStepClassName, previousConstructors.isEmpty()
+                                                                                               ? "null"
+                                                                                               : "this",
+            adt.dataConstruction().constructors().indexOf(currentConstructor),
+            mapperTypeName(adt, currentConstructor, deriveContext, deriveUtils),
+            Utils.asLambdaParametersString(currentConstructor.arguments(), currentConstructor.typeRestrictions(), nameAllocator), argName,
+            argName);
+  }
+
+  /**
+   * If all matched cases are constants, returns a function that looks up the result of the matched constructor in a table indexed by
+   * the constructor tag, instead of dispatching through the match method. Cases that were not matched get the given default.
+   */
+  static CodeBlock constantResultsLookup(AlgebraicDataType adt, DeriveContext deriveContext, String step, String defaultResult) {
+
+    NameAllocator nameAllocator = new NameAllocator();
+    nameAllocator.newName(defaultResult, "default");
+    String results = nameAllocator.newName("results", "results");
+    String adtLambdaParam = nameAllocator.newName(uncapitalize(adt.typeConstructor().declaredType().asElement().getSimpleName()), "adt var");
+
+    return CodeBlock.builder()
+        .beginControlFlow("if ($L.constantCases)", step)
+        .addStatement("$T[] $L = $L.constantResults($L)", Object.class, results, step, defaultResult)
+        .addStatement("return $L -> ($T) $L[$T.$L($L)]", adtLambdaParam, TypeName.get(adt.matchMethod().returnTypeVariable()), results,
+            ClassName.get(deriveContext.targetPackage(), deriveContext.targetClassName()), ConstructorTagDerivator.constructorTagMethodName(),
+            adtLambdaParam)
+        .endControlFlow()
+        .build();
+  }
+
+  /**
+   * Whether matchers can use enumMappersLookup: enums whose constructors have no arguments, so that their mappers are applied without
+   * any.
+   */
+  static boolean hasEnumMappersLookup(AlgebraicDataType adt) {
+
+    return ConstructorTagDerivator.isEnum(adt) && adt.dataConstruction()
+        .constructors()
+        .stream()
+        .allMatch(dc -> dc.arguments().isEmpty() && dc.typeRestrictions().isEmpty());
+  }
+
+  /**
+   * Each enum constant has its own class, so that dispatching on its match method is megamorphic: matchers of enums instead look the
+   * mapper of the matched constructor up in a table indexed by the constructor tag.
+   */
+  static CodeBlock enumMappersLookup(AlgebraicDataType adt, DeriveContext deriveContext, DeriveUtils deriveUtils, List<String> mappers) {
+
+    NameAllocator nameAllocator = new NameAllocator();
+    adt.dataConstruction().constructors().forEach(dc -> nameAllocator.newName(mapperFieldName(dc), mapperFieldName(dc)));
+    String mappersTable = nameAllocator.newName("mappers", "mappers");
+    String adtLambdaParam = nameAllocator.newName(uncapitalize(adt.typeConstructor().declaredType().asElement().getSimpleName()), "adt var");
+
+    DataConstructor firstConstructor = adt.dataConstruction().constructors().get(0);
+    ParameterizedTypeName mapperType = (ParameterizedTypeName) mapperTypeName(adt, firstConstructor, deriveContext, deriveUtils);
+
+    // generic array creation: the cast from an array of wildcards is safe as the array does not escape.
+    return CodeBlock.builder()
+        .addStatement("@$T($S) $T $L = ($T) new $T<?>[] {$L}", SuppressWarnings.class, "unchecked", ArrayTypeName.of(mapperType), mappersTable,
+            ArrayTypeName.of(mapperType), mapperType.rawType, String.join(", ", mappers))
+        .addStatement("return $L -> $L[$T.$L($L)].$L()", adtLambdaParam, mappersTable,
+            ClassName.get(deriveContext.targetPackage(), deriveContext.targetClassName()), ConstructorTagDerivator.constructorTagMethodName(),
+            adtLambdaParam, MapperDerivator.mapperApplyMethod(deriveUtils, deriveContext, firstConstructor))
+        .build();
   }
 
   private static String partialMatchBuilderClassName(DataConstructor currentConstructor) {
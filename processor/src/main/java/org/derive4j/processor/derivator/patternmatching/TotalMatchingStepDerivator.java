@@ -18,18 +18,18 @@
  */
 package org.derive4j.processor.derivator.patternmatching;
 
+import com.squareup.javapoet.AnnotationSpec;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.NameAllocator;
-import com.squareup.javapoet.ParameterSpec;
 import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
 import com.squareup.javapoet.TypeVariableName;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.VariableElement;
@@ -65,7 +65,13 @@ public class TotalMatchingStepDerivator {
         .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
         .addParameter(mapperTypeName(adt, currentConstructor, deriveContext, deriveUtils), mapperFieldName(currentConstructor));
 
-    MethodSpec.Builder currentConstructorTotalMatchConstantMethod = PatternMatchingDerivator.constantMatchMethodBuilder(adt, currentConstructor);
+    MethodSpec.Builder currentConstructorTotalMatchConstantMethod = nextConstructors.isEmpty()
+                                                                    ? PatternMatchingDerivator.constantMatchMethodBuilder(adt,
+        previousConstructors, currentConstructor, deriveContext)
+                                                                    : PatternMatchingDerivator.constantStepMethodBuilder(adt,
+                                                                        previousConstructors, currentConstructor,
+                                                                        totalMatchBuilderClassName(nextConstructors.get(0)),
+                                                                        deriveContext, deriveUtils);
 
     final Stream<MethodSpec> partialMatchMethods;
 
@@ -82,16 +88,8 @@ public class TotalMatchingStepDerivator {
     } else {
 
       totalMatchBuilder.addTypeVariable(returnTypeVarName)
-          .superclass(ParameterizedTypeName.get(getClassName(deriveContext, OtherwiseMatchingStepDerivator.otherwiseBuilderClassName()),
-              PatternMatchingDerivator.matcherVariables(adt).map(TypeName::get).toArray(TypeName[]::new)))
-          .addMethod(MethodSpec.constructorBuilder()
-              .addModifiers(Modifier.PRIVATE)
-              .addParameters(previousConstructors.stream()
-                  .map(dc -> ParameterSpec.builder(mapperTypeName(adt, dc, deriveContext, deriveUtils), mapperFieldName(dc)).build())
-                  .collect(Collectors.toList()))
-              .addStatement("super($L)", joinStringsAsArguments(Stream.concat(previousConstructors.stream().map(MapperDerivator::mapperFieldName),
-                  IntStream.range(previousConstructors.size(), adt.dataConstruction().constructors().size()).mapToObj(__ -> "null"))))
-              .build());
+          .superclass(PatternMatchingDerivator.stepTypeName(adt, deriveContext))
+          .addMethod(PatternMatchingDerivator.stepConstructor(adt, deriveContext));
 
       partialMatchMethods = PatternMatchingDerivator.partialMatchMethodBuilders(adt, previousConstructors, nextConstructors, deriveContext,
           deriveUtils).map(MethodSpec.Builder::build);
@@ -103,11 +101,16 @@ public class TotalMatchingStepDerivator {
           .getDeclaredType(FlavourImpl.findF(deriveContext.flavour(), deriveUtils.elements()), adt.typeConstructor().declaredType(),
               adt.matchMethod().returnTypeVariable()));
 
+      if (!previousConstructors.isEmpty()) {
+        currentConstructorTotalMatchMethod.addAnnotation(
+            AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build());
+      }
+
       currentConstructorTotalMatchMethod.returns(returnType)
           .addCode(DataConstructions.cases()
               .multipleConstructors(MultipleConstructorsSupport.cases()
-                  .visitorDispatch((visitorParam, visitorType, constructors) -> vistorDispatchImpl(deriveContext, adt, visitorType, visitorParam,
-                      previousConstructors, currentConstructor))
+                  .visitorDispatch((visitorParam, visitorType, constructors) -> vistorDispatchImpl(deriveUtils, deriveContext, adt, visitorType,
+                      visitorParam, previousConstructors, currentConstructor))
                   .functionsDispatch(
                       constructors1 -> functionDispatchImpl(deriveUtils, deriveContext, adt, previousConstructors, currentConstructor)))
               .oneConstructor(constructor -> oneConstructorImpl(currentConstructor, adt))
@@ -126,10 +129,11 @@ public class TotalMatchingStepDerivator {
           PatternMatchingDerivator.matcherVariables(adt).map(TypeName::get).toArray(TypeName[]::new));
 
       currentConstructorTotalMatchMethod.returns(returnType)
-          .addStatement("return new $L<>($L)", totalMatchBuilderClassName(firstNextConstructor),
-              Stream.concat(previousConstructors.stream().map(dc -> "super." + mapperFieldName(dc)), Stream.of(mapperFieldName(currentConstructor)))
-                  .reduce((s1, s2) -> s1 + ", " + s2)
-                  .orElse(""));
+          .addStatement("return new $L<>($L, $L, $L, false, null)", totalMatchBuilderClassName(firstNextConstructor),
+              previousConstructors.isEmpty()
+              ? "null"
+              : "this",
+              previousConstructors.size(), mapperFieldName(currentConstructor));
 
       currentConstructorTotalMatchConstantMethod.returns(returnType);
 
@@ -166,8 +170,8 @@ public class TotalMatchingStepDerivator {
 
     for (DataConstructor dc : previousConstructors) {
       nameAllocator.newName(mapperFieldName(dc), mapperFieldName(dc));
-      codeBlock.addStatement("$1T $2L = super.$2L", mapperTypeName(adt, dc, deriveContext, deriveUtils), mapperFieldName(dc));
     }
+    codeBlock.add(previousMappers(deriveUtils, deriveContext, adt, previousConstructors));
 
     String adtLambdaParam = uncapitalize(adt.typeConstructor().declaredType().asElement().getSimpleName());
 
@@ -179,8 +183,8 @@ public class TotalMatchingStepDerivator {
         .build();
   }
 
-  private static CodeBlock vistorDispatchImpl(DeriveContext deriveContext, AlgebraicDataType adt, DeclaredType visitorType,
-      VariableElement visitorParam, List<DataConstructor> previousConstructors, DataConstructor currentConstructor) {
+  private static CodeBlock vistorDispatchImpl(DeriveUtils deriveUtils, DeriveContext deriveContext, AlgebraicDataType adt,
+      DeclaredType visitorType, VariableElement visitorParam, List<DataConstructor> previousConstructors, DataConstructor currentConstructor) {
 
     String visitorVarName = visitorParam.getSimpleName().toString();
     String adtLambdaParam = uncapitalize(adt.typeConstructor().declaredType().asElement().getSimpleName());
@@ -188,18 +192,48 @@ public class TotalMatchingStepDerivator {
     NameAllocator nameAllocator = new NameAllocator();
     nameAllocator.newName(mapperFieldName(currentConstructor), "case arg");
     nameAllocator.newName(adtLambdaParam, "adt var");
+    previousConstructors.forEach(dc -> nameAllocator.newName(mapperFieldName(dc), mapperFieldName(dc)));
     nameAllocator.newName(visitorVarName, "visitor var");
 
+    if (PatternMatchingDerivator.hasEnumMappersLookup(adt)) {
+      return CodeBlock.builder()
+          .add(previousMappers(deriveUtils, deriveContext, adt, previousConstructors))
+          .add(PatternMatchingDerivator.enumMappersLookup(adt, deriveContext, deriveUtils,
+              Stream.concat(previousConstructors.stream(), Stream.of(currentConstructor)).map(MapperDerivator::mapperFieldName).collect(
+                  Collectors.toList())))
+          .build();
+    }
+
     return CodeBlock.builder()
+        .add(previousMappers(deriveUtils, deriveContext, adt, previousConstructors))
         .addStatement("$T $L = $T.$L($L)", TypeName.get(visitorType), nameAllocator.get("visitor var"),
             ClassName.get(deriveContext.targetPackage(), deriveContext.targetClassName()), MapperDerivator.visitorLambdaFactoryName(adt),
-            joinStringsAsArguments(Stream.concat(previousConstructors.stream().map(dc -> "super." + mapperFieldName(dc)),
+            joinStringsAsArguments(Stream.concat(previousConstructors.stream().map(MapperDerivator::mapperFieldName),
                 Stream.of(mapperFieldName(currentConstructor)))))
         .addStatement("return $1L -> $1L.$2L($3L)", nameAllocator.get("adt var"), adt.matchMethod().element().getSimpleName(),
             nameAllocator.get("visitor var"))
         .build();
   }
 
+  /**
+   * In the total matching path the steps are known statically: the mapper of the last previous constructor is held by this step, the one
+   * before by the previous step, and so on.
+   */
+  private static CodeBlock previousMappers(DeriveUtils deriveUtils, DeriveContext deriveContext, AlgebraicDataType adt,
+      List<DataConstructor> previousConstructors) {
+
+    CodeBlock.Builder codeBlock = CodeBlock.builder();
+
+    for (int i = 0; i < previousConstructors.size(); i++) {
+      DataConstructor dc = previousConstructors.get(i);
+      TypeName mapperType = mapperTypeName(adt, dc, deriveContext, deriveUtils);
+      codeBlock.addStatement("$T $L = ($T) super$L.caseMapper", mapperType, mapperFieldName(dc), mapperType,
+          String.join("", Collections.nCopies(previousConstructors.size() - 1 - i, ".previous")));
+    }
+
+    return codeBlock.build();
+  }
+
   static String totalMatchBuilderClassName(DataConstructor currentConstructor) {
 
     return "TotalMatchBuilder" + Utils.capitalize(currentConstructor.name());